@@ -0,0 +1,63 @@
+package it.uniroma3.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Corpus sintetico per i benchmark, generato con {@link CorpusGenerator} a partire
+ * dai file di esempio (directory indicata dalla proprietà {@code benchmark.data},
+ * di default {@code ../data}).
+ */
+final class BenchmarkCorpus {
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * Genera un corpus di file .txt di dimensione fissa, distribuiti in sottodirectory.
+     * @param directory directory in cui creare i file
+     * @param numFiles numero di file
+     * @param fileSize dimensione approssimativa di ciascun file in caratteri
+     * @param seed seme del generatore casuale
+     * @throws IOException in caso di errori di I/O
+     */
+    static void generate(Path directory, int numFiles, int fileSize, long seed) throws IOException {
+        CorpusGenerator generator = newGenerator(seed);
+        generator.setNumFiles(numFiles);
+        // Dimensione fissa, così il parametro fileSize del benchmark è quello misurato
+        generator.setFileSize(fileSize, 0);
+        generator.setDirectoryTree(1, Math.max(1, (numFiles + FILES_PER_DIRECTORY - 1) / FILES_PER_DIRECTORY));
+        generator.generate(directory);
+    }
+
+    /**
+     * Genera un testo casuale di circa size caratteri.
+     */
+    static String text(int size, long seed) throws IOException {
+        return newGenerator(seed).generateText(size);
+    }
+
+    private static CorpusGenerator newGenerator(long seed) {
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setSourceDirectory(Paths.get(System.getProperty("benchmark.data", "../data")));
+        return generator;
+    }
+
+    /**
+     * Elimina ricorsivamente una directory.
+     */
+    static void deleteRecursively(Path path) throws IOException {
+        if (Files.exists(path)) {
+            try (Stream<Path> paths = Files.walk(path)) {
+                for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.index.IndexWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark dell'indicizzazione di un singolo file con un IndexWriter già aperto,
+ * come avviene nel watcher: ogni invocazione sostituisce il documento di un file del corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexFileBenchmark {
+    private static final int NUM_FILES = 200;
+
+    @Param({"4096", "65536", "1048576"})
+    private int fileSize;
+
+    @Param({"STORED", "NONE", "EXTERNAL"})
+    private ContentStorage contentStorage;
+
+    private Path workPath;
+    private Path dataPath;
+    private Indexer indexer;
+    private IndexWriter writer;
+    private File[] files;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workPath = Files.createTempDirectory("benchmark-index-file");
+        dataPath = workPath.resolve("data");
+        BenchmarkCorpus.generate(dataPath, NUM_FILES, fileSize, 42);
+        try (Stream<Path> paths = Files.walk(dataPath)) {
+            files = paths.filter(Files::isRegularFile).sorted().map(Path::toFile).toArray(File[]::new);
+        }
+
+        indexer = new Indexer(workPath.resolve("index").toString(), 1, contentStorage);
+        writer = indexer.openWriter();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        indexer.close();
+        BenchmarkCorpus.deleteRecursively(workPath);
+    }
+
+    @Benchmark
+    public int indexFile() throws IOException {
+        File file = files[next++ % files.length];
+        return indexer.indexFile(writer, dataPath, file);
+    }
+}
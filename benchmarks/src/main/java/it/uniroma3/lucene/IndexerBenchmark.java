@@ -0,0 +1,74 @@
+package it.uniroma3.lucene;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della creazione completa dell'indice su corpora sintetici di dimensioni diverse.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexerBenchmark {
+    @Param({"100", "1000"})
+    private int numFiles;
+
+    @Param({"4096", "65536"})
+    private int fileSize;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    @Param({"STORED", "EXTERNAL"})
+    private ContentStorage contentStorage;
+
+    private Path workPath;
+    private Path dataPath;
+    private Path indexPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workPath = Files.createTempDirectory("benchmark-indexer");
+        dataPath = workPath.resolve("data");
+        indexPath = workPath.resolve("index");
+        BenchmarkCorpus.generate(dataPath, numFiles, fileSize, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkCorpus.deleteRecursively(workPath);
+    }
+
+    /**
+     * Ricrea l'indice dell'intero corpus. Ogni invocazione usa un nuovo Indexer,
+     * così le metriche raccolte non si accumulano tra le iterazioni.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int createIndex() throws IOException {
+        Indexer indexer = new Indexer(indexPath.toString(), threads, contentStorage);
+        try {
+            return indexer.createIndex(dataPath.toString());
+        } finally {
+            indexer.close();
+        }
+    }
+}
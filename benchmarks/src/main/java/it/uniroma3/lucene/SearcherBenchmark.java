@@ -0,0 +1,104 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della ricerca e del parsing per ciascun tipo di query di {@link TestQueries}.
+ * La ricerca viene misurata con la cache dei risultati disattivata (costo effettivo
+ * della query) e attivata (query ripetute).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearcherBenchmark {
+    /** Stesse query di TestQueries: termine singolo, più termini, frasi, prefissi di campo. */
+    @Param({
+        "Lucene",
+        "Java programmazione",
+        "\"information retrieval\"",
+        "nome:documento",
+        "nome:analisi",
+        "contenuto:indici",
+        "contenuto:\"struttura dati\"",
+        "nome:ricerca contenuto:sistema",
+        "analyzer",
+        "Java Lucene"
+    })
+    private String query;
+
+    @Param({"1000"})
+    private int numFiles;
+
+    @Param({"8192"})
+    private int fileSize;
+
+    private Path workPath;
+    private Searcher searcher;
+    private Searcher cachedSearcher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workPath = Files.createTempDirectory("benchmark-searcher");
+        Path dataPath = workPath.resolve("data");
+        Path indexPath = workPath.resolve("index");
+        BenchmarkCorpus.generate(dataPath, numFiles, fileSize, 42);
+
+        Indexer indexer = new Indexer(indexPath.toString(), Runtime.getRuntime().availableProcessors());
+        indexer.createIndex(dataPath.toString());
+        indexer.close();
+
+        searcher = new Searcher(indexPath.toString());
+        searcher.setResultCacheEnabled(false);
+        cachedSearcher = new Searcher(indexPath.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        searcher.close();
+        cachedSearcher.close();
+        BenchmarkCorpus.deleteRecursively(workPath);
+    }
+
+    @Benchmark
+    public List<Searcher.SearchResult> search() throws IOException, ParseException {
+        return searcher.search(query, 10);
+    }
+
+    @Benchmark
+    public List<Searcher.SearchResult> searchCached() throws IOException, ParseException {
+        return cachedSearcher.search(query, 10);
+    }
+
+    @Benchmark
+    public Query parseQuery() throws ParseException {
+        return searcher.parseQuery(query);
+    }
+
+    @Benchmark
+    public Query parseQueryUncached() throws ParseException {
+        return searcher.parseQueryUncached(query);
+    }
+}
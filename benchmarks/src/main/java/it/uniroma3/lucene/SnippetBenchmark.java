@@ -0,0 +1,85 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.FSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della generazione degli snippet su documenti di dimensioni crescenti:
+ * la ricerca testuale di {@code Searcher.extractRelevantSnippet} a confronto con
+ * {@link OffsetHighlighter}. Il termine cercato compare solo alla fine del documento.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnippetBenchmark {
+    private static final String QUERY = "Lucene ornitorinco";
+    private static final int SNIPPET_LENGTH = 150;
+
+    @Param({"1024", "65536", "1048576"})
+    private int contentSize;
+
+    private Path workPath;
+    private String content;
+    private DirectoryReader reader;
+    private Query query;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException {
+        workPath = Files.createTempDirectory("benchmark-snippet");
+        Path dataPath = workPath.resolve("data");
+        Path indexPath = workPath.resolve("index");
+        Files.createDirectories(dataPath);
+
+        content = BenchmarkCorpus.text(contentSize, 42) + " ornitorinco";
+        Files.write(dataPath.resolve("documento.txt"), content.getBytes(StandardCharsets.UTF_8));
+
+        Indexer indexer = new Indexer(indexPath.toString());
+        indexer.createIndex(dataPath.toString());
+        indexer.close();
+
+        reader = DirectoryReader.open(FSDirectory.open(indexPath));
+        try (Searcher searcher = new Searcher(indexPath.toString())) {
+            query = searcher.parseQuery(QUERY);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        BenchmarkCorpus.deleteRecursively(workPath);
+    }
+
+    @Benchmark
+    public String extractRelevantSnippet() {
+        return Searcher.extractRelevantSnippet(content, QUERY, SNIPPET_LENGTH);
+    }
+
+    @Benchmark
+    public OffsetHighlighter.Snippet offsetHighlighter() throws IOException {
+        return new OffsetHighlighter(query, reader, "content").highlight(0, content, SNIPPET_LENGTH);
+    }
+}
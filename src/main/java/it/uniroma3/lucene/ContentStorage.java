@@ -0,0 +1,23 @@
+package it.uniroma3.lucene;
+
+/**
+ * Modalità di memorizzazione del contenuto dei file nell'indice.
+ */
+public enum ContentStorage {
+    /**
+     * Il contenuto viene indicizzato e memorizzato nell'indice: gli snippet dei
+     * risultati sono sempre disponibili, ma ogni file viene caricato per intero in memoria.
+     */
+    STORED,
+    /**
+     * Il contenuto viene solo indicizzato, leggendo il file in streaming senza
+     * caricarlo in memoria. I risultati della ricerca non hanno snippet.
+     */
+    NONE,
+    /**
+     * Il contenuto viene indicizzato in streaming e memorizzato compresso in un
+     * archivio esterno ai campi di Lucene ({@link ContentStore}), da cui gli snippet
+     * leggono solo i blocchi necessari.
+     */
+    EXTERNAL
+}
@@ -0,0 +1,487 @@
+package it.uniroma3.lucene;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Archivio esterno del contenuto dei file, usato con {@link ContentStorage#EXTERNAL}
+ * al posto dei campi memorizzati di Lucene.
+ * <p>
+ * Il testo di ogni file viene diviso in blocchi di circa {@value #CHUNK_CHARS} caratteri,
+ * codificati in UTF-8 e compressi singolarmente con Deflate. I blocchi sono accodati a
+ * un file {@code content_<generazione>.store} nella directory dell'indice, seguiti da
+ * un'intestazione con la posizione e la lunghezza di ciascun blocco; il documento Lucene
+ * memorizza solo il riferimento all'intestazione, che contiene anche la generazione del
+ * file. In lettura i blocchi vengono decompressi solo quando servono, quindi per uno
+ * snippet si legge una piccola parte del file.
+ * <p>
+ * L'archivio è solo in aggiunta: i documenti aggiornati o rimossi lasciano spazio
+ * inutilizzato. Ogni ricostruzione completa dell'indice scrive un nuovo file, il cui nome
+ * viene registrato nei dati utente del commit ({@value #COMMIT_DATA_KEY}); il file
+ * precedente resta leggibile dai reader ancora aperti sul vecchio commit e viene
+ * eliminato dall'{@link Indexer} dopo il commit successivo.
+ * Scritture e letture concorrenti sono consentite.
+ */
+final class ContentStore implements Closeable {
+    /** Nome del file degli indici creati prima dei file per generazione (generazione 0). */
+    static final String LEGACY_FILE_NAME = "content.store";
+    /** Chiave dei dati utente del commit con il nome del file dell'archivio in uso. */
+    static final String COMMIT_DATA_KEY = "contentStore";
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("content(?:_(\\d+))?\\.store");
+    /** Bit del riferimento riservati alla posizione nel file; i restanti contengono la generazione. */
+    private static final int POSITION_BITS = 40;
+    private static final long MAX_POSITION = (1L << POSITION_BITS) - 1;
+    private static final int MAX_GENERATION = (1 << (Long.SIZE - 1 - POSITION_BITS)) - 1;
+    /** Numero indicativo di caratteri in ciascun blocco compresso. */
+    static final int CHUNK_CHARS = 32 * 1024;
+    /** Intestazione del file, per riconoscere archivi non validi. */
+    private static final long MAGIC = 0x4C55434E43545331L;
+    private static final int FILE_HEADER_LENGTH = Long.BYTES;
+    /** Numero di blocchi e numero totale di caratteri di un contenuto. */
+    private static final int ENTRY_HEADER_LENGTH = Integer.BYTES + Long.BYTES;
+    /** Posizione, lunghezza compressa e numero di caratteri di un blocco. */
+    private static final int CHUNK_HEADER_LENGTH = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final Path path;
+    private final int generation;
+    private final FileChannel channel;
+    private final boolean writable;
+    /** Posizione della prossima scrittura; protetta dal lock dell'istanza. */
+    private long writePosition;
+
+    private ContentStore(Path path, FileChannel channel, boolean writable) throws IOException {
+        this.path = path;
+        this.generation = generation(path.getFileName().toString());
+        this.channel = channel;
+        this.writable = writable;
+        if (channel.size() == 0) {
+            if (!writable) {
+                throw new IOException("Archivio dei contenuti vuoto: " + path);
+            }
+            writeFileHeader();
+        } else {
+            ByteBuffer header = readFully(0, FILE_HEADER_LENGTH);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Archivio dei contenuti non valido: " + path);
+            }
+        }
+        this.writePosition = channel.size();
+    }
+
+    /**
+     * Restituisce il nome del file di una generazione dell'archivio.
+     * @param generation generazione, maggiore di 0 (0 per il file degli indici precedenti)
+     * @return nome del file nella directory dell'indice
+     */
+    static String fileName(int generation) {
+        return generation == 0 ? LEGACY_FILE_NAME : "content_" + generation + ".store";
+    }
+
+    /**
+     * Restituisce la generazione indicata dal nome di un file dell'archivio.
+     * @param fileName nome del file
+     * @return generazione, oppure -1 se il nome non è quello di un archivio
+     */
+    static int generation(String fileName) {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(fileName);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        if (matcher.group(1) == null) {
+            return 0;
+        }
+        try {
+            int generation = Integer.parseInt(matcher.group(1));
+            return generation <= MAX_GENERATION ? generation : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Restituisce la generazione del file a cui si riferisce un riferimento.
+     * @param pointer riferimento restituito da {@link #append(Reader)}
+     * @return generazione del file dell'archivio
+     */
+    static int generationOf(long pointer) {
+        return (int) (pointer >>> POSITION_BITS);
+    }
+
+    /**
+     * Restituisce il nome del primo file di una nuova generazione, successiva a tutte
+     * quelle presenti nella directory dell'indice.
+     * @param indexPath directory dell'indice
+     * @return nome del file
+     * @throws IOException in caso di errori di I/O
+     */
+    static String nextFileName(Path indexPath) throws IOException {
+        int last = 0;
+        try (Stream<Path> files = Files.list(indexPath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                last = Math.max(last, generation(file.getFileName().toString()));
+            }
+        }
+        if (last >= MAX_GENERATION) {
+            throw new IOException("Generazioni dell'archivio dei contenuti esaurite in " + indexPath);
+        }
+        return fileName(last + 1);
+    }
+
+    /**
+     * Apre (o crea) un file dell'archivio in scrittura.
+     * @param file file dell'archivio, con il nome di una generazione
+     * @return archivio aperto in lettura e scrittura
+     * @throws IOException in caso di errori di I/O
+     */
+    static ContentStore openForWriting(Path file) throws IOException {
+        checkFileName(file);
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new ContentStore(file, channel, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Apre in sola lettura un file dell'archivio.
+     * @param file file dell'archivio, con il nome di una generazione
+     * @return archivio aperto in lettura
+     * @throws IOException se l'archivio non esiste o non è valido
+     */
+    static ContentStore openForReading(Path file) throws IOException {
+        checkFileName(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ContentStore(file, channel, false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void checkFileName(Path file) throws IOException {
+        if (generation(file.getFileName().toString()) < 0) {
+            throw new IOException("Nome non valido per un archivio dei contenuti: " + file);
+        }
+    }
+
+    /**
+     * Nome del file di questo archivio.
+     * @return nome del file nella directory dell'indice
+     */
+    String getFileName() {
+        return path.getFileName().toString();
+    }
+
+    private void writeFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        header.putLong(MAGIC).flip();
+        writeFully(header, 0);
+    }
+
+    /**
+     * Legge tutto il testo dal Reader e lo accoda all'archivio. Il Reader viene chiuso.
+     * I blocchi vengono compressi sul thread chiamante; solo la scrittura è serializzata.
+     * @param reader testo da archiviare
+     * @return riferimento al contenuto, da memorizzare nel documento
+     * @throws IOException in caso di errori di I/O
+     */
+    long append(Reader reader) throws IOException {
+        ByteBuffer chunkHeaders = ByteBuffer.allocate(16 * CHUNK_HEADER_LENGTH);
+        int chunkCount = 0;
+        long totalChars = 0;
+        char[] chars = new char[CHUNK_CHARS + 1];
+        int pending = 0;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (reader) {
+            boolean eof = false;
+            while (!eof) {
+                // Riempie il blocco; un surrogato alto finale passa al blocco successivo
+                while (pending < CHUNK_CHARS) {
+                    int read = reader.read(chars, pending, CHUNK_CHARS - pending);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    pending += read;
+                }
+                if (pending == 0) {
+                    break;
+                }
+                int length = pending;
+                if (!eof && Character.isHighSurrogate(chars[length - 1])) {
+                    length--;
+                }
+
+                byte[] compressed = compress(deflater, chars, length);
+                long position = write(ByteBuffer.wrap(compressed));
+                if (chunkHeaders.remaining() < CHUNK_HEADER_LENGTH) {
+                    ByteBuffer larger = ByteBuffer.allocate(chunkHeaders.capacity() * 2);
+                    chunkHeaders.flip();
+                    chunkHeaders = larger.put(chunkHeaders);
+                }
+                chunkHeaders.putLong(position).putInt(compressed.length).putInt(length);
+                chunkCount++;
+                totalChars += length;
+
+                System.arraycopy(chars, length, chars, 0, pending - length);
+                pending -= length;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_LENGTH + chunkHeaders.position());
+        entryHeader.putInt(chunkCount).putLong(totalChars);
+        chunkHeaders.flip();
+        entryHeader.put(chunkHeaders).flip();
+        return ((long) generation << POSITION_BITS) | write(entryHeader);
+    }
+
+    private static byte[] compress(Deflater deflater, char[] chars, int length) {
+        ByteBuffer utf8 = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars, 0, length));
+        byte[] input = new byte[utf8.remaining()];
+        utf8.get(input);
+
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] output = new byte[Math.max(64, input.length / 2)];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                byte[] larger = new byte[output.length * 2];
+                System.arraycopy(output, 0, larger, 0, size);
+                output = larger;
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        byte[] result = new byte[size];
+        System.arraycopy(output, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Accoda un buffer all'archivio.
+     * @return posizione a cui è stato scritto
+     */
+    private synchronized long write(ByteBuffer buffer) throws IOException {
+        if (!writable) {
+            throw new IOException("Archivio dei contenuti aperto in sola lettura: " + path);
+        }
+        long position = writePosition;
+        if (position + buffer.remaining() > MAX_POSITION) {
+            throw new IOException("Archivio dei contenuti pieno: " + path);
+        }
+        writePosition += buffer.remaining();
+        writeFully(buffer, position);
+        return position;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Riferimento oltre la fine dell'archivio dei contenuti: " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Forza su disco le scritture, da invocare prima del commit dell'indice.
+     * @throws IOException in caso di errori di I/O
+     */
+    void sync() throws IOException {
+        if (writable) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Apre un contenuto archiviato leggendone solo l'intestazione.
+     * @param pointer riferimento restituito da {@link #append(Reader)}
+     * @return contenuto i cui blocchi vengono caricati al primo accesso
+     * @throws IOException in caso di errori di I/O o di riferimento non valido
+     */
+    Entry entry(long pointer) throws IOException {
+        if (generationOf(pointer) != generation) {
+            throw new IOException("Riferimento a un'altra generazione dell'archivio dei contenuti: " + pointer);
+        }
+        long position = pointer & MAX_POSITION;
+        ByteBuffer header = readFully(position, ENTRY_HEADER_LENGTH);
+        int chunkCount = header.getInt();
+        long totalChars = header.getLong();
+        if (chunkCount < 0 || totalChars < 0 || totalChars > Integer.MAX_VALUE) {
+            throw new IOException("Riferimento non valido nell'archivio dei contenuti: " + pointer);
+        }
+
+        ByteBuffer chunks = readFully(position + ENTRY_HEADER_LENGTH, chunkCount * CHUNK_HEADER_LENGTH);
+        long[] positions = new long[chunkCount];
+        int[] compressedLengths = new int[chunkCount];
+        int[] starts = new int[chunkCount + 1];
+        for (int i = 0; i < chunkCount; i++) {
+            positions[i] = chunks.getLong();
+            compressedLengths[i] = chunks.getInt();
+            starts[i + 1] = starts[i] + chunks.getInt();
+        }
+        if (starts[chunkCount] != totalChars) {
+            throw new IOException("Riferimento non valido nell'archivio dei contenuti: " + pointer);
+        }
+        return new Entry(positions, compressedLengths, starts);
+    }
+
+    /**
+     * Contenuto archiviato, esposto come CharSequence. I blocchi vengono letti e
+     * decompressi al primo accesso ai loro caratteri. Un'istanza è usata da un solo thread.
+     * Gli errori di lettura vengono segnalati con {@link UncheckedIOException}.
+     */
+    final class Entry implements CharSequence {
+        private final long[] positions;
+        private final int[] compressedLengths;
+        /** Primo carattere di ciascun blocco; l'ultimo elemento è la lunghezza totale. */
+        private final int[] starts;
+        private final Map<Integer, String> loadedChunks = new HashMap<>();
+
+        private Entry(long[] positions, int[] compressedLengths, int[] starts) {
+            this.positions = positions;
+            this.compressedLengths = compressedLengths;
+            this.starts = starts;
+        }
+
+        @Override
+        public int length() {
+            return starts[starts.length - 1];
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("Indice " + index + " fuori dal contenuto di lunghezza " + length());
+            }
+            int chunk = chunkOf(index);
+            return chunk(chunk).charAt(index - starts[chunk]);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("Intervallo [" + start + ", " + end + ") non valido");
+            }
+            StringBuilder result = new StringBuilder(end - start);
+            int position = start;
+            while (position < end) {
+                int chunk = chunkOf(position);
+                int chunkEnd = Math.min(end, starts[chunk + 1]);
+                result.append(chunk(chunk), position - starts[chunk], chunkEnd - starts[chunk]);
+                position = chunkEnd;
+            }
+            return result.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+
+        /**
+         * Restituisce il blocco che contiene il carattere indicato.
+         */
+        private int chunkOf(int index) {
+            int low = 0;
+            int high = positions.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        private String chunk(int chunk) {
+            String text = loadedChunks.get(chunk);
+            if (text == null) {
+                try {
+                    text = readChunk(chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                loadedChunks.put(chunk, text);
+            }
+            return text;
+        }
+
+        private String readChunk(int chunk) throws IOException {
+            ByteBuffer compressed = readFully(positions[chunk], compressedLengths[chunk]);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array(), 0, compressedLengths[chunk]);
+                // Ogni carattere occupa al più tre byte in UTF-8 (quattro per una coppia di surrogati)
+                int expectedChars = starts[chunk + 1] - starts[chunk];
+                byte[] utf8 = new byte[expectedChars * 3];
+                int size = 0;
+                while (!inflater.finished() && size < utf8.length) {
+                    int inflated = inflater.inflate(utf8, size, utf8.length - size);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Blocco compresso troncato nell'archivio dei contenuti: " + path);
+                    }
+                    size += inflated;
+                }
+                String text = new String(utf8, 0, size, StandardCharsets.UTF_8);
+                if (text.length() != expectedChars) {
+                    throw new IOException("Blocco non valido nell'archivio dei contenuti: " + path);
+                }
+                return text;
+            } catch (DataFormatException e) {
+                throw new IOException("Blocco non valido nell'archivio dei contenuti: " + path, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Chiude l'archivio forzando su disco le scritture.
+     * @throws IOException in caso di errori di I/O
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package it.uniroma3.lucene;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generatore di corpora sintetici per i test su larga scala.
+ * <p>
+ * Le parole seguono una distribuzione di Zipf su un vocabolario formato dai termini
+ * dei file di esempio (ordinati per frequenza, quindi i più comuni sono parole reali)
+ * seguiti da termini sintetici fino alla dimensione richiesta. La dimensione dei file
+ * segue una distribuzione log-normale attorno alla mediana, e i file sono distribuiti
+ * in un albero di directory di profondità e ampiezza configurabili.
+ * <p>
+ * Il corpus dipende solo dal seme e dai parametri: ogni file usa un generatore casuale
+ * derivato dal seme e dal proprio numero, quindi la generazione in parallelo produce
+ * sempre gli stessi file.
+ */
+public class CorpusGenerator {
+    private static final int DEFAULT_NUM_FILES = 1000;
+    private static final int DEFAULT_MEDIAN_FILE_SIZE = 4096;
+    private static final double DEFAULT_SIZE_SIGMA = 1.0;
+    private static final int DEFAULT_DEPTH = 2;
+    private static final int DEFAULT_FANOUT = 10;
+    private static final int DEFAULT_VOCABULARY_SIZE = 50_000;
+    private static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+    /** Dimensione minima di un file generato, in caratteri. */
+    private static final int MIN_FILE_SIZE = 16;
+    /** Rapporto massimo tra la dimensione di un file e la mediana. */
+    private static final int MAX_SIZE_RATIO = 64;
+    private static final int WORDS_PER_LINE = 12;
+    private static final String[] SYLLABLES = {
+        "ba", "be", "bi", "bo", "ca", "ce", "ci", "co", "da", "de", "di", "do", "fa", "fe", "fi", "fo",
+        "ga", "ge", "gi", "go", "la", "le", "li", "lo", "ma", "me", "mi", "mo", "na", "ne", "ni", "no",
+        "pa", "pe", "pi", "po", "ra", "re", "ri", "ro", "sa", "se", "si", "so", "ta", "te", "ti", "to",
+        "va", "ve", "vi", "vo", "za", "ze", "zi", "zo", "an", "en", "in", "on", "ar", "er", "ir", "or"
+    };
+
+    private final long seed;
+    private int numFiles = DEFAULT_NUM_FILES;
+    private int medianFileSize = DEFAULT_MEDIAN_FILE_SIZE;
+    private double sizeSigma = DEFAULT_SIZE_SIGMA;
+    private int depth = DEFAULT_DEPTH;
+    private int fanout = DEFAULT_FANOUT;
+    private int vocabularySize = DEFAULT_VOCABULARY_SIZE;
+    private double zipfExponent = DEFAULT_ZIPF_EXPONENT;
+    private Path sourceDirectory = Paths.get("data");
+
+    /**
+     * Costruttore del generatore con i parametri predefiniti.
+     * @param seed seme da cui dipende l'intero corpus
+     */
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Imposta il numero di file da generare.
+     * @param numFiles numero di file (almeno 1)
+     */
+    public void setNumFiles(int numFiles) {
+        if (numFiles < 1) {
+            throw new IllegalArgumentException("Il numero di file deve essere almeno 1: " + numFiles);
+        }
+        this.numFiles = numFiles;
+    }
+
+    /**
+     * Imposta la distribuzione delle dimensioni dei file.
+     * @param medianFileSize dimensione mediana in caratteri
+     * @param sizeSigma deviazione standard del logaritmo della dimensione (0 per file tutti uguali)
+     */
+    public void setFileSize(int medianFileSize, double sizeSigma) {
+        if (medianFileSize < MIN_FILE_SIZE || sizeSigma < 0) {
+            throw new IllegalArgumentException("Distribuzione delle dimensioni non valida: " + medianFileSize + ", " + sizeSigma);
+        }
+        this.medianFileSize = medianFileSize;
+        this.sizeSigma = sizeSigma;
+    }
+
+    /**
+     * Imposta la struttura dell'albero di directory.
+     * @param depth numero di livelli di sottodirectory (0 per metterli tutti nella radice)
+     * @param fanout numero di sottodirectory per livello
+     */
+    public void setDirectoryTree(int depth, int fanout) {
+        if (depth < 0 || fanout < 1) {
+            throw new IllegalArgumentException("Struttura delle directory non valida: " + depth + ", " + fanout);
+        }
+        this.depth = depth;
+        this.fanout = fanout;
+    }
+
+    /**
+     * Imposta il vocabolario.
+     * @param vocabularySize numero di termini distinti
+     * @param zipfExponent esponente della distribuzione di Zipf (1 per testi in linguaggio naturale)
+     */
+    public void setVocabulary(int vocabularySize, double zipfExponent) {
+        if (vocabularySize < 1 || zipfExponent <= 0) {
+            throw new IllegalArgumentException("Vocabolario non valido: " + vocabularySize + ", " + zipfExponent);
+        }
+        this.vocabularySize = vocabularySize;
+        this.zipfExponent = zipfExponent;
+    }
+
+    /**
+     * Imposta la directory dei file di esempio da cui prendere i termini più frequenti.
+     * Se la directory non esiste il vocabolario è interamente sintetico.
+     * @param sourceDirectory directory con i file .txt di esempio
+     */
+    public void setSourceDirectory(Path sourceDirectory) {
+        this.sourceDirectory = sourceDirectory;
+    }
+
+    /**
+     * Genera il corpus nella directory indicata, in parallelo.
+     * @param directory directory di destinazione (creata se non esiste)
+     * @return numero di file generati
+     * @throws IOException in caso di errori di I/O
+     */
+    public int generate(Path directory) throws IOException {
+        Vocabulary vocabulary = newVocabulary();
+        int leaves = (int) Math.min(Integer.MAX_VALUE, Math.round(Math.pow(fanout, depth)));
+        int filesPerLeaf = (int) Math.max(1, ((long) numFiles + leaves - 1) / leaves);
+        AtomicInteger generated = new AtomicInteger();
+
+        try {
+            IntStream.range(0, numFiles).parallel().forEach(i -> {
+                try {
+                    writeFile(directory, vocabulary, i, filesPerLeaf);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                int count = generated.incrementAndGet();
+                if (count % 100_000 == 0) {
+                    System.out.println("File generati: " + count + "/" + numFiles);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return generated.get();
+    }
+
+    /**
+     * Scrive il file numero index, nella directory foglia che gli corrisponde.
+     */
+    private void writeFile(Path root, Vocabulary vocabulary, int index, int filesPerLeaf) throws IOException {
+        Path directory = root;
+        int leaf = index / filesPerLeaf;
+        for (int level = depth - 1; level >= 0; level--) {
+            int divisor = (int) Math.pow(fanout, level);
+            directory = directory.resolve(String.format("d%d_%d", depth - level, (leaf / divisor) % fanout));
+        }
+        Files.createDirectories(directory);
+
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + index);
+        String name = vocabulary.fileNameWord(random) + "_" + index + ".txt";
+        int size = fileSize(random);
+        try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(name), StandardCharsets.UTF_8)) {
+            writeText(writer, vocabulary, random, size);
+        }
+    }
+
+    /**
+     * Estrae la dimensione di un file dalla distribuzione log-normale.
+     */
+    private int fileSize(Random random) {
+        double size = medianFileSize * Math.exp(sizeSigma * random.nextGaussian());
+        return (int) Math.max(MIN_FILE_SIZE, Math.min((double) medianFileSize * MAX_SIZE_RATIO, size));
+    }
+
+    /**
+     * Scrive circa size caratteri di testo, a righe di {@value #WORDS_PER_LINE} parole.
+     */
+    private static void writeText(Appendable out, Vocabulary vocabulary, Random random, int size) throws IOException {
+        int written = 0;
+        int wordsInLine = 0;
+        while (written < size) {
+            String word = vocabulary.word(random);
+            out.append(word);
+            wordsInLine = (wordsInLine + 1) % WORDS_PER_LINE;
+            out.append(wordsInLine == 0 ? '\n' : ' ');
+            written += word.length() + 1;
+        }
+    }
+
+    /**
+     * Genera un testo di circa size caratteri con il vocabolario del generatore,
+     * senza scriverlo su disco (ad esempio per i benchmark).
+     * @param size numero approssimativo di caratteri
+     * @return testo generato
+     * @throws IOException se la directory dei file di esempio non è leggibile
+     */
+    public String generateText(int size) throws IOException {
+        StringBuilder text = new StringBuilder(size + 32);
+        writeText(text, newVocabulary(), new Random(seed), size);
+        return text.toString();
+    }
+
+    /**
+     * Genera una miscela di query sul vocabolario del corpus, con i termini estratti
+     * dalla stessa distribuzione di Zipf: termini singoli, coppie di termini, frasi,
+     * prefissi e ricerche per nome del file.
+     * @param count numero di query
+     * @return query nella sintassi di {@link Searcher}
+     * @throws IOException se la directory dei file di esempio non è leggibile
+     */
+    public List<String> generateQueries(int count) throws IOException {
+        Vocabulary vocabulary = newVocabulary();
+        Random random = new Random(~seed);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int shape = random.nextInt(100);
+            String word = vocabulary.word(random);
+            if (shape < 40) {
+                queries.add(word);
+            } else if (shape < 65) {
+                queries.add(word + " " + vocabulary.word(random));
+            } else if (shape < 80) {
+                queries.add("\"" + word + " " + vocabulary.word(random) + "\"");
+            } else if (shape < 90) {
+                queries.add(word.substring(0, Math.min(word.length(), 3)) + "*");
+            } else {
+                queries.add("nome:" + vocabulary.fileNameWord(random));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Costruisce il vocabolario: prima i termini dei file di esempio per frequenza
+     * decrescente, poi termini sintetici fino alla dimensione richiesta.
+     */
+    private Vocabulary newVocabulary() throws IOException {
+        List<String> words = new ArrayList<>(sourceTerms());
+        if (words.size() > vocabularySize) {
+            words = words.subList(0, vocabularySize);
+        }
+
+        Set<String> distinct = new LinkedHashSet<>(words);
+        Random random = new Random(seed);
+        while (distinct.size() < vocabularySize) {
+            int syllables = 2 + random.nextInt(3);
+            StringBuilder word = new StringBuilder();
+            for (int i = 0; i < syllables; i++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            distinct.add(word.toString());
+        }
+        return new Vocabulary(distinct.toArray(new String[0]), zipfExponent);
+    }
+
+    /**
+     * Legge i termini dei file di esempio, ordinati per frequenza decrescente.
+     */
+    private List<String> sourceTerms() throws IOException {
+        if (sourceDirectory == null || !Files.isDirectory(sourceDirectory)) {
+            return List.of();
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            for (Path file : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".txt")).sorted()::iterator) {
+                String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                for (String term : text.split("[^\\p{L}]+")) {
+                    if (term.length() > 1) {
+                        frequencies.merge(term.toLowerCase(Locale.ROOT), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        List<String> terms = new ArrayList<>(frequencies.keySet());
+        // A parità di frequenza l'ordine alfabetico rende il vocabolario deterministico
+        terms.sort((a, b) -> {
+            int byFrequency = Integer.compare(frequencies.get(b), frequencies.get(a));
+            return byFrequency != 0 ? byFrequency : a.compareTo(b);
+        });
+        return terms;
+    }
+
+    /**
+     * Vocabolario con la distribuzione cumulativa di Zipf dei suoi termini.
+     */
+    private static final class Vocabulary {
+        private final String[] words;
+        private final double[] cumulative;
+
+        Vocabulary(String[] words, double exponent) {
+            this.words = words;
+            this.cumulative = new double[words.length];
+            double total = 0;
+            for (int rank = 0; rank < words.length; rank++) {
+                total += 1.0 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < words.length; rank++) {
+                cumulative[rank] /= total;
+            }
+        }
+
+        /**
+         * Estrae un termine secondo la distribuzione di Zipf.
+         */
+        String word(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            int rank = index >= 0 ? index : -index - 1;
+            return words[Math.min(rank, words.length - 1)];
+        }
+
+        /**
+         * Estrae un termine da usare nel nome di un file: solo lettere ASCII,
+         * così i nomi non dipendono dalla codifica del file system.
+         */
+        String fileNameWord(Random random) {
+            String word = word(random);
+            return word.matches("[a-z]+") ? word : "documento";
+        }
+    }
+
+    /**
+     * Genera un corpus da linea di comando.
+     * Utilizzo: CorpusGenerator &lt;directory&gt; [--files N] [--size MEDIANA] [--size-sigma S]
+     * [--depth D] [--fanout F] [--vocabulary V] [--zipf S] [--seed N] [--source DIR]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Utilizzo: java CorpusGenerator <directory> [--files N] [--size MEDIANA] [--size-sigma S]"
+                    + " [--depth D] [--fanout F] [--vocabulary V] [--zipf S] [--seed N] [--source DIR]");
+            System.exit(1);
+        }
+
+        try {
+            Map<String, String> options = new HashMap<>();
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                options.put(args[i], args[i + 1]);
+            }
+
+            CorpusGenerator generator = new CorpusGenerator(Long.parseLong(options.getOrDefault("--seed", "42")));
+            generator.setNumFiles(Integer.parseInt(options.getOrDefault("--files", String.valueOf(DEFAULT_NUM_FILES))));
+            generator.setFileSize(
+                    Integer.parseInt(options.getOrDefault("--size", String.valueOf(DEFAULT_MEDIAN_FILE_SIZE))),
+                    Double.parseDouble(options.getOrDefault("--size-sigma", String.valueOf(DEFAULT_SIZE_SIGMA))));
+            generator.setDirectoryTree(
+                    Integer.parseInt(options.getOrDefault("--depth", String.valueOf(DEFAULT_DEPTH))),
+                    Integer.parseInt(options.getOrDefault("--fanout", String.valueOf(DEFAULT_FANOUT))));
+            generator.setVocabulary(
+                    Integer.parseInt(options.getOrDefault("--vocabulary", String.valueOf(DEFAULT_VOCABULARY_SIZE))),
+                    Double.parseDouble(options.getOrDefault("--zipf", String.valueOf(DEFAULT_ZIPF_EXPONENT))));
+            generator.setSourceDirectory(Paths.get(options.getOrDefault("--source", "data")));
+
+            long start = System.currentTimeMillis();
+            int generated = generator.generate(Paths.get(args[0]));
+            System.out.println("Generati " + generated + " file in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Errore di I/O: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Parametro non valido: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ricerca durante la digitazione: ogni testo inserito viene cercato come query,
+ * con l'ultima parola trattata come prefisso.
+ * <p>
+ * Ogni nuova ricerca rende superate quelle precedenti, che vengono interrotte dal
+ * {@link QueryTimeout} di Lucene senza attendere la fine della valutazione. Ogni
+ * ricerca ha inoltre un budget di tempo: se lo supera viene interrotta e il risultato
+ * è segnalato come incompleto, così che la ricerca completa possa essere richiesta
+ * esplicitamente. Quando il testo estende l'ultima parola della ricerca precedente,
+ * e quella ricerca aveva restituito tutti i documenti corrispondenti, si cerca solo
+ * tra quei documenti. Le ricerche incrementali non vengono registrate nel log delle query.
+ * <p>
+ * I metodi possono essere chiamati da thread diversi.
+ */
+public class IncrementalSearch {
+    /** Budget di tempo predefinito per ogni ricerca, in millisecondi. */
+    public static final long DEFAULT_BUDGET_MILLIS = 100;
+    /** Lunghezza minima dell'ultima parola perché venga cercata come prefisso. */
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final Pattern LAST_TOKEN = Pattern.compile("(?:^|\\s)((?:nome:|contenuto:)?([\\p{L}\\p{N}]+))$");
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    private final Searcher searcher;
+    private final int maxResults;
+    private final long budgetNanos;
+    private final AtomicLong generation = new AtomicLong();
+
+    // Ultima ricerca completata, per riusarne i risultati; protetti dal lock dell'istanza
+    private String lastText;
+    private long lastReaderGeneration;
+    private List<String> lastPaths;
+
+    /**
+     * Costruttore.
+     * @param searcher Searcher su cui eseguire le ricerche
+     * @param maxResults numero massimo di risultati per ricerca
+     * @param budgetMillis tempo massimo per ogni ricerca, in millisecondi
+     */
+    public IncrementalSearch(Searcher searcher, int maxResults, long budgetMillis) {
+        if (maxResults <= 0) {
+            throw new IllegalArgumentException("Il numero di risultati deve essere positivo: " + maxResults);
+        }
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Il budget di tempo deve essere positivo: " + budgetMillis);
+        }
+        this.searcher = searcher;
+        this.maxResults = maxResults;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+    }
+
+    /**
+     * Cerca il testo indicato, interrompendo le ricerche ancora in corso.
+     * @param text testo digitato
+     * @return risultato della ricerca
+     * @throws CancellationException se nel frattempo è stata avviata una ricerca più recente
+     * @throws IOException in caso di errori di I/O
+     * @throws ParseException se il testo non è una query valida
+     */
+    public Result search(String text) throws IOException, ParseException {
+        long start = System.nanoTime();
+        long current = generation.incrementAndGet();
+        long deadline = start + budgetNanos;
+        QueryTimeout timeout = () -> generation.get() != current || System.nanoTime() - deadline > 0;
+
+        String query = toPrefixQuery(text);
+        long readerGeneration = searcher.getReaderGeneration();
+        List<String> restrictTo = reusablePaths(text, readerGeneration);
+        if (restrictTo != null && restrictTo.isEmpty()) {
+            // La ricerca precedente non aveva risultati: neanche questa ne può avere
+            remember(text, readerGeneration, restrictTo);
+            return new Result(query, List.of(), System.nanoTime() - start, true, true);
+        }
+
+        List<Searcher.SearchResult> results;
+        try {
+            results = searcher.search(query, maxResults, timeout, restrictTo, false);
+        } catch (CancellationException e) {
+            if (generation.get() != current) {
+                throw e;
+            }
+            return new Result(query, List.of(), System.nanoTime() - start, false, restrictTo != null);
+        }
+        if (generation.get() != current) {
+            throw new CancellationException("Ricerca superata: " + text);
+        }
+
+        List<String> paths = null;
+        if (results.size() < maxResults) {
+            // Risultati esaustivi: una ricerca che estende questa può limitarsi a questi documenti
+            paths = new ArrayList<>(results.size());
+            for (Searcher.SearchResult result : results) {
+                if (result.getPath() == null) {
+                    paths = null;
+                    break;
+                }
+                paths.add(result.getPath());
+            }
+        }
+        remember(text, readerGeneration, paths);
+        return new Result(query, results, System.nanoTime() - start, true, restrictTo != null);
+    }
+
+    /**
+     * Interrompe la ricerca in corso, se presente.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private synchronized List<String> reusablePaths(String text, long readerGeneration) {
+        if (lastPaths == null || lastText == null || readerGeneration != lastReaderGeneration
+                || text.length() <= lastText.length() || !text.startsWith(lastText)) {
+            return null;
+        }
+        // Il testo deve estendere l'ultima parola, già cercata come prefisso
+        if (!WORD.matcher(text.substring(lastText.length())).matches()
+                || toPrefixQuery(lastText).equals(lastText)) {
+            return null;
+        }
+        return lastPaths;
+    }
+
+    private synchronized void remember(String text, long readerGeneration, List<String> paths) {
+        lastText = text;
+        lastReaderGeneration = readerGeneration;
+        lastPaths = paths;
+    }
+
+    /**
+     * Trasforma il testo in una query in cui l'ultima parola è cercata come prefisso.
+     * Il testo resta invariato se l'ultima parola è troppo corta, è esclusa con
+     * {@code NOT} o {@code -}, oppure si trova all'interno di una frase.
+     * @param text testo digitato
+     * @return query da eseguire
+     */
+    static String toPrefixQuery(String text) {
+        Matcher matcher = LAST_TOKEN.matcher(text);
+        if (!matcher.find() || matcher.group(2).length() < MIN_PREFIX_LENGTH) {
+            return text;
+        }
+        String before = text.substring(0, matcher.start(1));
+        if (before.chars().filter(c -> c == '"').count() % 2 != 0
+                || before.trim().endsWith("NOT") || before.endsWith("-")) {
+            return text;
+        }
+        String word = matcher.group(2);
+        if (word.equals("AND") || word.equals("OR") || word.equals("NOT")) {
+            return text;
+        }
+        return text + "*";
+    }
+
+    /**
+     * Risultato di una ricerca incrementale.
+     */
+    public static class Result {
+        private final String query;
+        private final List<Searcher.SearchResult> results;
+        private final long elapsedNanos;
+        private final boolean complete;
+        private final boolean reused;
+
+        Result(String query, List<Searcher.SearchResult> results, long elapsedNanos, boolean complete, boolean reused) {
+            this.query = query;
+            this.results = results;
+            this.elapsedNanos = elapsedNanos;
+            this.complete = complete;
+            this.reused = reused;
+        }
+
+        /**
+         * @return query effettivamente eseguita
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return risultati trovati; vuoto se la ricerca non è completa
+         */
+        public List<Searcher.SearchResult> getResults() {
+            return results;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return false se la ricerca ha superato il budget di tempo ed è stata interrotta
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return true se la ricerca è stata limitata ai risultati della ricerca precedente
+         */
+        public boolean isReused() {
+            return reused;
+        }
+    }
+}
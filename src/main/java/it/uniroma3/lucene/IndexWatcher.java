@@ -0,0 +1,333 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Servizio che osserva la directory dei dati e applica all'indice, in piccoli
+ * batch, le creazioni, modifiche e cancellazioni dei file .txt.
+ * Gli eventi vengono raccolti finché la directory resta inattiva per il periodo
+ * di debounce (o finché il batch non diventa troppo vecchio o troppo grande),
+ * poi vengono scritti con un unico commit e notificati ai listener, ad esempio
+ * un {@link Searcher} near-real-time da aggiornare con {@link Searcher#refresh()}.
+ * Se un batch non può essere applicato le sue modifiche vengono conservate e
+ * riprovate con un intervallo crescente, insieme a quelle arrivate nel frattempo.
+ * <p>
+ * Il watcher tiene aperto l'IndexWriter dell'indice: finché è attivo non è
+ * possibile usare {@link Indexer#createIndex} o {@link Indexer#updateIndex}
+ * sulla stessa directory.
+ */
+public class IndexWatcher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(IndexWatcher.class.getName());
+    /** Periodo di inattività dopo il quale un batch viene applicato. */
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+    /** Ritardo massimo tra il primo evento di un batch e la sua applicazione. */
+    private static final long MAX_BATCH_DELAY_MILLIS = 500;
+    /** Numero massimo di percorsi in un batch. */
+    private static final int MAX_BATCH_SIZE = 1000;
+    /** Attesa prima di riprovare un batch fallito, raddoppiata a ogni nuovo fallimento. */
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    /** Attesa massima tra due tentativi di applicare un batch. */
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    /**
+     * Listener notificato dopo il commit di ogni batch.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void batchCommitted() throws IOException;
+    }
+
+    private final Indexer indexer;
+    private final Path dataRoot;
+    private final long debounceMillis;
+    private final IndexWriter writer;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Thread watcherThread;
+    private volatile boolean running;
+
+    /**
+     * Costruttore del watcher con il periodo di debounce predefinito.
+     * @param indexer Indexer da usare per l'indicizzazione dei file
+     * @param dataDirectoryPath percorso della directory dei dati da osservare
+     * @throws IOException in caso di errori di I/O
+     */
+    public IndexWatcher(Indexer indexer, String dataDirectoryPath) throws IOException {
+        this(indexer, dataDirectoryPath, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Costruttore del watcher. Apre l'IndexWriter e allinea subito l'indice al
+     * contenuto attuale della directory dei dati.
+     * @param indexer Indexer da usare per l'indicizzazione dei file
+     * @param dataDirectoryPath percorso della directory dei dati da osservare
+     * @param debounceMillis periodo di inattività dopo il quale un batch viene applicato
+     * @throws IOException in caso di errori di I/O
+     */
+    public IndexWatcher(Indexer indexer, String dataDirectoryPath, long debounceMillis) throws IOException {
+        this.indexer = indexer;
+        this.dataRoot = Paths.get(dataDirectoryPath).toAbsolutePath().normalize();
+        this.debounceMillis = debounceMillis;
+        if (!Files.isDirectory(dataRoot)) {
+            throw new IOException("La directory dei dati non esiste: " + dataDirectoryPath);
+        }
+
+        this.writer = indexer.openWriter();
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            registerRecursively(dataRoot);
+            // La sincronizzazione iniziale termina con un commit
+            indexer.synchronize(writer, dataRoot.toString());
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Restituisce l'IndexWriter usato dal watcher, da cui aprire un {@link Searcher} near-real-time.
+     * @return IndexWriter dell'indice
+     */
+    public IndexWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Registra un listener notificato dopo il commit di ogni batch.
+     * @param listener listener da registrare
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Avvia il thread che osserva la directory dei dati.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        watcherThread = new Thread(this::watchLoop, "index-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        LOGGER.info("Osservazione della directory dei dati avviata: " + dataRoot);
+    }
+
+    /**
+     * Registra una directory e tutte le sue sottodirectory presso il WatchService.
+     */
+    private void registerRecursively(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Ciclo principale: raccoglie gli eventi e applica i batch.
+     * Per ogni percorso conta solo l'ultimo evento ricevuto (true = da indicizzare, false = rimosso).
+     * Un batch fallito resta pendente e viene riprovato dopo un'attesa crescente.
+     */
+    private void watchLoop() {
+        Map<Path, Boolean> pending = new LinkedHashMap<>();
+        long firstEventTime = 0;
+        long lastEventTime = 0;
+        long retryDelay = 0;
+        long retryTime = 0;
+
+        while (running) {
+            try {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else if (retryDelay > 0) {
+                    key = watchService.poll(Math.max(1, retryTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } else {
+                    key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                }
+
+                if (key != null) {
+                    if (pending.isEmpty()) {
+                        firstEventTime = System.currentTimeMillis();
+                    }
+                    lastEventTime = System.currentTimeMillis();
+                    collectEvents(key, pending);
+                }
+                if (retryDelay > 0 && pending.size() > MAX_BATCH_SIZE) {
+                    // Durante i tentativi le modifiche si accumulano: basta riallineare l'intero indice
+                    pending.clear();
+                    pending.put(dataRoot, Boolean.TRUE);
+                }
+
+                long now = System.currentTimeMillis();
+                boolean due = retryDelay > 0
+                        ? now >= retryTime
+                        : now - lastEventTime >= debounceMillis
+                                || now - firstEventTime >= MAX_BATCH_DELAY_MILLIS
+                                || pending.size() >= MAX_BATCH_SIZE;
+                if (!pending.isEmpty() && due) {
+                    if (applyBatch(pending)) {
+                        pending.clear();
+                        retryDelay = 0;
+                    } else if (!writer.isOpen()) {
+                        LOGGER.severe("IndexWriter chiuso: l'osservazione della directory dei dati viene interrotta");
+                        return;
+                    } else {
+                        retryDelay = retryDelay == 0
+                                ? INITIAL_RETRY_DELAY_MILLIS
+                                : Math.min(2 * retryDelay, MAX_RETRY_DELAY_MILLIS);
+                        retryTime = now + retryDelay;
+                        LOGGER.warning("Batch di " + pending.size() + " modifiche conservato, nuovo tentativo tra "
+                                + retryDelay + " ms");
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Chiusura del watcher
+                return;
+            } catch (RuntimeException e) {
+                // Un errore imprevisto non deve fermare l'osservazione: le modifiche pendenti restano in coda
+                LOGGER.log(Level.SEVERE, "Errore imprevisto nell'osservazione della directory dei dati", e);
+            }
+        }
+    }
+
+    /**
+     * Converte gli eventi di una WatchKey in operazioni pendenti.
+     */
+    private void collectEvents(WatchKey key, Map<Path, Boolean> pending) {
+        Path directory = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Eventi persi: al prossimo batch l'indice viene riallineato per intero
+                pending.put(dataRoot, Boolean.TRUE);
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.put(path, Boolean.FALSE);
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    // I file creati prima della registrazione non generano eventi: la directory va indicizzata per intero
+                    try {
+                        registerRecursively(path);
+                        enqueueDirectory(path, pending);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Impossibile osservare la directory " + path, e);
+                    }
+                }
+            } else if (path.getFileName().toString().endsWith(".txt")) {
+                pending.put(path, Boolean.TRUE);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    /**
+     * Aggiunge alle operazioni pendenti tutti i file .txt di una directory.
+     */
+    private void enqueueDirectory(Path directory, Map<Path, Boolean> pending) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(".txt"))
+                    .forEach(p -> pending.put(p, Boolean.TRUE));
+        }
+    }
+
+    /**
+     * Applica un batch di operazioni all'indice, esegue il commit e notifica i listener.
+     * @return false se il batch non è stato applicato e va riprovato
+     */
+    private boolean applyBatch(Map<Path, Boolean> pending) {
+        try {
+            if (pending.containsKey(dataRoot)) {
+                indexer.synchronize(writer, dataRoot.toString());
+            } else {
+                for (Map.Entry<Path, Boolean> entry : pending.entrySet()) {
+                    File file = entry.getKey().toFile();
+                    if (entry.getValue() && file.isFile()) {
+                        indexer.indexFile(writer, dataRoot, file);
+                    } else if (!entry.getValue()) {
+                        indexer.deleteFile(writer, dataRoot, file);
+                    }
+                }
+            }
+            long writeStart = System.nanoTime();
+            indexer.commit(writer);
+            indexer.getMetrics().recordPhase(IndexingMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+            LOGGER.fine("Applicato un batch di " + pending.size() + " modifiche all'indice");
+        } catch (IOException | RuntimeException e) {
+            // Le operazioni già applicate vengono ripetute al prossimo tentativo: sono idempotenti
+            LOGGER.log(Level.SEVERE, "Errore durante l'aggiornamento dell'indice", e);
+            return false;
+        }
+
+        // Il batch è già nel commit: un listener che fallisce non lo fa riprovare
+        for (Listener listener : listeners) {
+            try {
+                listener.batchCommitted();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Errore nella notifica di un listener del watcher", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ferma il watcher e chiude l'IndexWriter, committando le modifiche pendenti.
+     * @throws IOException in caso di errori di I/O
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        if (watcherThread != null) {
+            try {
+                watcherThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writer.close();
+    }
+}
@@ -5,22 +5,63 @@ import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
@@ -28,24 +69,97 @@ import java.io.StringWriter;
  * Classe per l'indicizzazione dei file di testo.
  * Utilizza SimpleAnalyzer per i nomi dei file e StandardAnalyzer per il contenuto.
  * Integra un sistema di metriche per monitorare le performance di indicizzazione.
+ * Con più di un thread di indicizzazione i file vengono elaborati da una pipeline
+ * produttore/consumatore: la visita delle directory alimenta una coda limitata
+ * da cui un pool di worker legge i file, costruisce i documenti e li aggiunge
+ * all'IndexWriter (che è thread-safe).
+ * I file sono letti come UTF-8; con {@link ContentStorage#NONE} il contenuto viene
+ * passato all'analyzer in streaming, senza mai essere caricato per intero in memoria.
  */
 public class Indexer {
+    /** Campo con il percorso relativo del file, chiave univoca del documento. */
+    static final String PATH_FIELD = "path";
+    /** Campo con la dimensione del file in byte. */
+    static final String SIZE_FIELD = "size";
+    /**
+     * Campo con la data di ultima modifica del file, memorizzato come doc values così
+     * da poterlo aggiornare senza reindicizzare il documento.
+     */
+    static final String MTIME_FIELD = "mtime";
+    /** Campo con l'hash SHA-256 del contenuto del file. */
+    static final String HASH_FIELD = "hash";
+    /** Campo con il riferimento al contenuto nell'archivio esterno ({@link ContentStorage#EXTERNAL}). */
+    static final String CONTENT_POINTER_FIELD = "content_ptr";
+    /**
+     * Tipo del campo del contenuto: testo tokenizzato e memorizzato, con gli offset
+     * delle occorrenze nelle postings per costruire gli snippet senza rileggere il testo.
+     */
+    static final FieldType CONTENT_FIELD_TYPE = newContentFieldType(true);
+    /** Tipo del campo del contenuto quando il testo non viene memorizzato nell'indice. */
+    private static final FieldType CONTENT_INDEXED_FIELD_TYPE = newContentFieldType(false);
+    /** Dimensione del buffer usato per leggere i file. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    /** Numero di file in coda per ciascun worker prima che la visita delle directory si blocchi. */
+    private static final int QUEUE_CAPACITY_PER_THREAD = 64;
+    /** Marcatore di fine lavoro inserito nella coda per ciascun worker. */
+    private static final File END_OF_QUEUE = new File("");
+
     private final Path indexPath;
     private final Analyzer filenameAnalyzer;
     private final Analyzer contentAnalyzer;
+    private final int indexingThreads;
+    private final ContentStorage contentStorage;
+    private ContentStore contentStore;
+    /** File dell'archivio registrato nell'ultimo commit, da conservare fino al commit successivo. */
+    private String committedContentStore;
     private IndexingMetrics metrics;
+    /** Richiesta di annullamento, valida per l'indicizzazione in corso o per la prossima ad avviarsi. */
+    private final AtomicBoolean cancelRequested = new AtomicBoolean();
+    /** Esito dell'ultima indicizzazione terminata. */
+    private volatile boolean lastRunCancelled;
 
     /**
-     * Costruttore dell'Indexer.
+     * Costruttore dell'Indexer (indicizzazione sul thread chiamante).
      * @param indexDirectoryPath percorso della directory dove salvare l'indice
      */
     public Indexer(String indexDirectoryPath) {
+        this(indexDirectoryPath, 1);
+    }
+
+    /**
+     * Costruttore dell'Indexer con un pool di worker per l'indicizzazione parallela.
+     * @param indexDirectoryPath percorso della directory dove salvare l'indice
+     * @param indexingThreads numero di thread di indicizzazione (1 per l'indicizzazione sequenziale)
+     */
+    public Indexer(String indexDirectoryPath, int indexingThreads) {
+        this(indexDirectoryPath, indexingThreads, ContentStorage.STORED);
+    }
+
+    /**
+     * Costruttore dell'Indexer con la modalità di memorizzazione del contenuto.
+     * @param indexDirectoryPath percorso della directory dove salvare l'indice
+     * @param indexingThreads numero di thread di indicizzazione (1 per l'indicizzazione sequenziale)
+     * @param contentStorage modalità di memorizzazione del contenuto dei file
+     */
+    public Indexer(String indexDirectoryPath, int indexingThreads, ContentStorage contentStorage) {
+        if (indexingThreads < 1) {
+            throw new IllegalArgumentException("Il numero di thread di indicizzazione deve essere almeno 1: " + indexingThreads);
+        }
         this.indexPath = Paths.get(indexDirectoryPath);
+        this.indexingThreads = indexingThreads;
+        this.contentStorage = contentStorage;
         this.filenameAnalyzer = new SimpleAnalyzer();
         this.contentAnalyzer = new StandardAnalyzer();
         this.metrics = new IndexingMetrics();
     }
     
+    private static FieldType newContentFieldType(boolean stored) {
+        FieldType fieldType = new FieldType(stored ? TextField.TYPE_STORED : TextField.TYPE_NOT_STORED);
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        fieldType.freeze();
+        return fieldType;
+    }
+
     /**
      * Restituisce le metriche di indicizzazione.
      * @return oggetto IndexingMetrics con le metriche raccolte
@@ -54,16 +168,95 @@ public class Indexer {
         return metrics;
     }
 
+    /**
+     * Chiede di annullare l'indicizzazione in corso, ad esempio da un altro thread.
+     * I file non ancora elaborati vengono saltati; quelli già indicizzati vengono
+     * comunque salvati, così l'indice resta consistente e un successivo
+     * {@link #updateIndex(String)} riprende da dove si era fermato.
+     * <p>
+     * Se l'indicizzazione è stata programmata ma non è ancora partita, la richiesta
+     * vale per la prossima ad avviarsi: viene consumata al termine di quella.
+     */
+    public void cancel() {
+        cancelRequested.set(true);
+    }
+
+    /**
+     * Ritira una richiesta di annullamento non ancora consumata. Va invocato quando si
+     * programma una nuova indicizzazione, prima di renderla annullabile, così che una
+     * richiesta rivolta a un'indicizzazione già terminata non annulli la nuova.
+     */
+    public void resetCancel() {
+        cancelRequested.set(false);
+    }
+
+    /**
+     * Indica se l'ultima indicizzazione è stata annullata con {@link #cancel()}.
+     * @return true se l'indicizzazione è stata interrotta prima di elaborare tutti i file
+     */
+    public boolean isCancelled() {
+        return lastRunCancelled;
+    }
+
     /**
      * Crea l'indice a partire da una directory contenente file di testo.
+     * L'indice esistente viene sostituito completamente.
      * @param dataDirectoryPath percorso della directory contenente i file da indicizzare
      * @return numero di file indicizzati
      * @throws IOException in caso di errori di I/O
      */
     public int createIndex(String dataDirectoryPath) throws IOException {
-        // Inizia la misurazione delle metriche
-        metrics.startIndexing();
-        
+        return index(dataDirectoryPath, false);
+    }
+
+    /**
+     * Aggiorna l'indice in modo incrementale: reindicizza solo i file nuovi o modificati
+     * e rimuove dall'indice i file non più presenti nella directory dei dati.
+     * Un file è considerato invariato se dimensione e data di modifica coincidono con
+     * quelle indicizzate, oppure se l'hash del contenuto non è cambiato.
+     * Se l'indice non contiene i campi necessari (indice creato da una versione
+     * precedente) viene eseguita una ricostruzione completa.
+     * @param dataDirectoryPath percorso della directory contenente i file da indicizzare
+     * @return numero di file (re)indicizzati
+     * @throws IOException in caso di errori di I/O
+     */
+    public int updateIndex(String dataDirectoryPath) throws IOException {
+        return index(dataDirectoryPath, true);
+    }
+
+    /**
+     * Esegue l'indicizzazione completa o incrementale della directory dei dati.
+     * @param dataDirectoryPath percorso della directory contenente i file da indicizzare
+     * @param incremental true per aggiornare l'indice esistente, false per ricrearlo
+     * @return numero di file (re)indicizzati
+     * @throws IOException in caso di errori di I/O
+     */
+    private int index(String dataDirectoryPath, boolean incremental) throws IOException {
+        try (IndexWriter writer = openWriter(incremental
+                ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                : IndexWriterConfig.OpenMode.CREATE)) {
+            return indexFiles(writer, dataDirectoryPath, incremental);
+        }
+    }
+
+    /**
+     * Apre un IndexWriter sull'indice esistente (o su un nuovo indice), da usare
+     * con {@link #synchronize}, {@link #indexFile(IndexWriter, Path, File)} e
+     * {@link #deleteFile}. L'IndexWriter deve essere chiuso prima di questo Indexer.
+     * @return IndexWriter aperto in modalità CREATE_OR_APPEND
+     * @throws IOException in caso di errori di I/O
+     */
+    IndexWriter openWriter() throws IOException {
+        return openWriter(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+    }
+
+    /**
+     * Apre un IndexWriter sulla directory dell'indice.
+     * @param openMode modalità di apertura dell'indice
+     * @return IndexWriter aperto
+     * @throws IOException in caso di errori di I/O
+     */
+    private IndexWriter openWriter(IndexWriterConfig.OpenMode openMode) throws IOException {
         // Crea la directory dell'indice se non esiste
         if (!Files.exists(indexPath)) {
             Files.createDirectories(indexPath);
@@ -77,17 +270,165 @@ public class Indexer {
         
         // Configurazione per l'indice del contenuto
         IndexWriterConfig contentConfig = new IndexWriterConfig(contentAnalyzer);
-        contentConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        contentConfig.setOpenMode(openMode);
         
         // Utilizziamo un unico IndexWriter con l'analyzer per il contenuto
         // e gestiamo l'analyzer per i nomi file a livello di campo
-        try (IndexWriter writer = new IndexWriter(indexDirectory, contentConfig)) {
+        IndexWriter writer = new IndexWriter(indexDirectory, contentConfig);
+        if (contentStorage == ContentStorage.EXTERNAL) {
+            try {
+                openContentStore(writer, openMode == IndexWriterConfig.OpenMode.CREATE);
+            } catch (IOException | RuntimeException e) {
+                writer.close();
+                throw e;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Apre in scrittura il file dell'archivio esterno registrato nell'ultimo commit.
+     * Se l'indice viene ricreato si passa invece a un nuovo file: quello precedente
+     * resta valido per i reader ancora aperti sul vecchio commit.
+     */
+    private synchronized void openContentStore(IndexWriter writer, boolean rebuild) throws IOException {
+        // Anche quando l'indice viene ricreato, il file dell'ultimo commit serve ai reader aperti
+        String committed = null;
+        if (DirectoryReader.indexExists(writer.getDirectory())) {
+            committed = SegmentInfos.readLatestCommit(writer.getDirectory()).getUserData().get(ContentStore.COMMIT_DATA_KEY);
+            if (committed == null && Files.exists(indexPath.resolve(ContentStore.LEGACY_FILE_NAME))) {
+                // Indice creato prima dei file per generazione
+                committed = ContentStore.LEGACY_FILE_NAME;
+            }
+        }
+        committedContentStore = committed;
+        
+        if (rebuild || committed == null) {
+            startContentStore();
+        } else if (contentStore == null || !contentStore.getFileName().equals(committed)) {
+            closeContentStore();
+            contentStore = ContentStore.openForWriting(indexPath.resolve(committed));
+        }
+    }
+
+    /**
+     * Passa a un nuovo file dell'archivio esterno, per una ricostruzione completa dell'indice.
+     */
+    private synchronized void startContentStore() throws IOException {
+        ContentStore next = ContentStore.openForWriting(indexPath.resolve(ContentStore.nextFileName(indexPath)));
+        closeContentStore();
+        contentStore = next;
+    }
+
+    /**
+     * Esegue il commit dell'IndexWriter. Se è in uso l'archivio esterno, prima lo forza
+     * su disco, così l'indice non fa mai riferimento a contenuti non scritti, e ne registra
+     * il file nei dati utente del commit; dopo il commit elimina i file non più usati.
+     * @param writer IndexWriter ottenuto da {@link #openWriter()}
+     * @throws IOException in caso di errori di I/O
+     */
+    synchronized void commit(IndexWriter writer) throws IOException {
+        if (contentStore == null) {
+            writer.commit();
+            return;
+        }
+        contentStore.sync();
+        String current = contentStore.getFileName();
+        writer.setLiveCommitData(Map.of(ContentStore.COMMIT_DATA_KEY, current).entrySet());
+        writer.commit();
+        
+        // Il file del commit precedente può essere ancora in uso da reader che non hanno
+        // ancora visto il nuovo commit: viene eliminato solo al commit successivo
+        Set<String> inUse = new HashSet<>();
+        inUse.add(current);
+        if (committedContentStore != null) {
+            inUse.add(committedContentStore);
+        }
+        committedContentStore = current;
+        deleteUnusedContentStores(inUse);
+    }
+
+    /**
+     * Elimina i file dell'archivio esterno diversi da quelli indicati. Un file ancora
+     * aperto da un Searcher resta leggibile finché non viene chiuso; se il sistema
+     * operativo non consente di eliminarlo, verrà eliminato da un commit successivo.
+     */
+    private void deleteUnusedContentStores(Set<String> inUse) {
+        try (Stream<Path> files = Files.list(indexPath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (ContentStore.generation(name) >= 0 && !inUse.contains(name)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        System.err.println("Impossibile eliminare l'archivio dei contenuti " + name + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile elencare gli archivi dei contenuti: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Allinea in modo incrementale l'indice di un IndexWriter già aperto alla directory dei dati.
+     * @param writer IndexWriter ottenuto da {@link #openWriter()}
+     * @param dataDirectoryPath percorso della directory contenente i file da indicizzare
+     * @return numero di file (re)indicizzati
+     * @throws IOException in caso di errori di I/O
+     */
+    int synchronize(IndexWriter writer, String dataDirectoryPath) throws IOException {
+        return indexFiles(writer, dataDirectoryPath, true);
+    }
+
+    /**
+     * Indicizza la directory dei dati con l'IndexWriter fornito, raccogliendo le metriche.
+     * @param writer IndexWriter per scrivere l'indice
+     * @param dataDirectoryPath percorso della directory contenente i file da indicizzare
+     * @param incremental true per aggiornare l'indice esistente, false per ricrearlo
+     * @return numero di file (re)indicizzati
+     * @throws IOException in caso di errori di I/O
+     */
+    private int indexFiles(IndexWriter writer, String dataDirectoryPath, boolean incremental) throws IOException {
+        // Inizia la misurazione delle metriche; un annullamento già richiesto resta valido
+        metrics.startIndexing();
+        
+        try {
             File dataDir = new File(dataDirectoryPath);
             if (!dataDir.exists() || !dataDir.isDirectory()) {
                 throw new IOException("La directory dei dati non esiste: " + dataDirectoryPath);
             }
             
-            int result = indexDirectory(writer, dataDir);
+            Map<String, IndexedFile> indexedFiles = null;
+            if (incremental) {
+                indexedFiles = readIndexedFiles(writer);
+                if (indexedFiles == null) {
+                    System.out.println("L'indice non contiene i campi per l'aggiornamento incrementale: ricostruzione completa");
+                    writer.deleteAll();
+                    if (contentStore != null) {
+                        startContentStore();
+                    }
+                }
+            }
+            
+            IndexingSession session = new IndexingSession(writer, dataDir.toPath(), indexedFiles);
+            int result = indexingThreads > 1
+                    ? indexDirectoryParallel(session, dataDir)
+                    : indexDirectory(session, dataDir);
+            
+            // Rimuove i documenti dei file che non esistono più; se l'indicizzazione è stata
+            // annullata la mappa contiene anche i file non ancora visitati
+            if (indexedFiles != null && !cancelRequested.get()) {
+                for (String removedPath : indexedFiles.keySet()) {
+                    writer.deleteDocuments(new Term(PATH_FIELD, removedPath));
+                    metrics.recordDeletedFile();
+                }
+            }
+            
+            // Commit esplicito, per misurare la scrittura dei segmenti su disco
+            long writeStart = System.nanoTime();
+            commit(writer);
+            metrics.recordPhase(IndexingMetrics.Phase.WRITE, System.nanoTime() - writeStart);
             
             // Termina la misurazione delle metriche
             metrics.endIndexing();
@@ -100,26 +441,80 @@ public class Indexer {
             // Termina comunque la misurazione in caso di errore
             metrics.endIndexing();
             throw e;
+        } finally {
+            // La richiesta di annullamento riguardava questa indicizzazione
+            lastRunCancelled = cancelRequested.getAndSet(false);
         }
     }
 
+    /**
+     * Legge dall'indice lo stato (dimensione, data di modifica, hash) dei file indicizzati.
+     * Vengono caricati solo i campi di controllo, non il contenuto.
+     * @param writer IndexWriter dell'indice da aggiornare
+     * @return mappa percorso relativo -> stato del file, oppure null se l'indice
+     *         è stato creato da una versione precedente (documenti privi del campo
+     *         percorso, data di modifica non aggiornabile o contenuto indicizzato senza offset)
+     * @throws IOException in caso di errori di I/O
+     */
+    private Map<String, IndexedFile> readIndexedFiles(IndexWriter writer) throws IOException {
+        Map<String, IndexedFile> indexedFiles = new ConcurrentHashMap<>();
+        Set<String> fields = Set.of(PATH_FIELD, SIZE_FIELD, HASH_FIELD);
+        
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                LeafReader leafReader = leaf.reader();
+                FieldInfo contentInfo = leafReader.getFieldInfos().fieldInfo("content");
+                if (contentInfo != null && contentInfo.getIndexOptions() != CONTENT_FIELD_TYPE.indexOptions()) {
+                    // Il tipo di un campo non può cambiare in un indice esistente
+                    return null;
+                }
+                FieldInfo mtimeInfo = leafReader.getFieldInfos().fieldInfo(MTIME_FIELD);
+                if (mtimeInfo != null && mtimeInfo.getDocValuesType() != DocValuesType.NUMERIC) {
+                    return null;
+                }
+                NumericDocValues mtimes = leafReader.getNumericDocValues(MTIME_FIELD);
+                Bits liveDocs = leafReader.getLiveDocs();
+                StoredFields storedFields = leafReader.storedFields();
+                for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    Document document = storedFields.document(doc, fields);
+                    String path = document.get(PATH_FIELD);
+                    if (path == null || mtimes == null || !mtimes.advanceExact(doc)) {
+                        return null;
+                    }
+                    indexedFiles.put(path, new IndexedFile(
+                            document.getField(SIZE_FIELD).numericValue().longValue(),
+                            mtimes.longValue(),
+                            document.get(HASH_FIELD)));
+                }
+            }
+        }
+        
+        return indexedFiles;
+    }
+
     /**
      * Indicizza ricorsivamente tutti i file .txt in una directory.
-     * @param writer IndexWriter per scrivere l'indice
+     * @param session sessione di indicizzazione corrente
      * @param directory directory da indicizzare
      * @return numero di file indicizzati
      * @throws IOException in caso di errori di I/O
      */
-    private int indexDirectory(IndexWriter writer, File directory) throws IOException {
+    private int indexDirectory(IndexingSession session, File directory) throws IOException {
         File[] files = directory.listFiles();
         int numIndexed = 0;
         
         if (files != null) {
             for (File file : files) {
+                if (cancelRequested.get()) {
+                    break;
+                }
                 if (file.isDirectory()) {
-                    numIndexed += indexDirectory(writer, file);
+                    numIndexed += indexDirectory(session, file);
                 } else if (file.getName().endsWith(".txt")) {
-                    numIndexed += indexFile(writer, file);
+                    numIndexed += indexFile(session, file);
                 }
             }
         }
@@ -128,16 +523,128 @@ public class Indexer {
     }
 
     /**
-     * Indicizza un singolo file di testo.
-     * @param writer IndexWriter per scrivere l'indice
+     * Indicizza in parallelo tutti i file .txt di una directory.
+     * Il thread chiamante visita le directory e accoda i file, mentre i worker
+     * li indicizzano; la coda limitata evita di tenere in memoria l'elenco completo.
+     * @param session sessione di indicizzazione corrente
+     * @param directory directory da indicizzare
+     * @return numero di file indicizzati
+     * @throws IOException in caso di errori di I/O o di interruzione
+     */
+    private int indexDirectoryParallel(IndexingSession session, File directory) throws IOException {
+        BlockingQueue<File> queue = new ArrayBlockingQueue<>(indexingThreads * QUEUE_CAPACITY_PER_THREAD);
+        AtomicInteger numIndexed = new AtomicInteger();
+        AtomicInteger workerIds = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(indexingThreads, runnable -> {
+            Thread thread = new Thread(runnable, "indexer-worker-" + workerIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < indexingThreads; i++) {
+                futures.add(workers.submit(() -> {
+                    try {
+                        File file;
+                        while ((file = queue.take()) != END_OF_QUEUE) {
+                            // Dopo l'annullamento la coda viene solo svuotata
+                            if (!cancelRequested.get()) {
+                                numIndexed.addAndGet(indexFile(session, file));
+                            }
+                        }
+                        return null;
+                    } finally {
+                        // I worker sono nuovi a ogni esecuzione: le loro statistiche non devono restare in sospeso
+                        metrics.releaseThread();
+                    }
+                }));
+            }
+            
+            enqueueDirectory(directory, queue, futures);
+            for (int i = 0; i < indexingThreads; i++) {
+                enqueue(END_OF_QUEUE, queue, futures);
+            }
+            
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return numIndexed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Indicizzazione interrotta");
+        } catch (ExecutionException e) {
+            throw new IOException("Errore in un worker di indicizzazione", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Accoda ricorsivamente i file .txt di una directory.
+     * @param directory directory da visitare
+     * @param queue coda dei file da indicizzare
+     * @param workers worker che consumano la coda
+     * @throws IOException se tutti i worker sono terminati
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private void enqueueDirectory(File directory, BlockingQueue<File> queue, List<Future<?>> workers)
+            throws IOException, InterruptedException {
+        File[] files = directory.listFiles();
+        
+        if (files != null) {
+            for (File file : files) {
+                if (cancelRequested.get()) {
+                    break;
+                }
+                if (file.isDirectory()) {
+                    enqueueDirectory(file, queue, workers);
+                } else if (file.getName().endsWith(".txt")) {
+                    enqueue(file, queue, workers);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserisce un file nella coda, attendendo finché c'è spazio.
+     * Se tutti i worker sono terminati la coda non verrebbe più svuotata,
+     * quindi l'attesa viene interrotta con un errore.
+     */
+    private void enqueue(File file, BlockingQueue<File> queue, List<Future<?>> workers)
+            throws IOException, InterruptedException {
+        while (!queue.offer(file, 100, TimeUnit.MILLISECONDS)) {
+            if (workers.stream().allMatch(Future::isDone)) {
+                throw new IOException("I worker di indicizzazione sono terminati prima della fine della coda");
+            }
+        }
+    }
+
+    /**
+     * Indicizza un singolo file di testo. Può essere invocato da più worker in parallelo.
+     * Durante un aggiornamento incrementale i file invariati vengono saltati e quelli
+     * modificati sostituiscono il documento precedente con lo stesso percorso.
+     * @param session sessione di indicizzazione corrente
      * @param file file da indicizzare
      * @return 1 se il file è stato indicizzato, 0 altrimenti
      * @throws IOException in caso di errori di I/O
      */
-    private int indexFile(IndexWriter writer, File file) throws IOException {
-        long startTime = System.currentTimeMillis();
+    private int indexFile(IndexingSession session, File file) throws IOException {
+        String path = session.relativePath(file);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        IndexedFile previous = session.indexedFiles != null ? session.indexedFiles.remove(path) : null;
+        
+        if (previous != null && previous.size == size && previous.lastModified == lastModified) {
+            metrics.recordSkippedFile();
+            return 0;
+        }
+        
+        long startTime = System.nanoTime();
         boolean successful = false;
+        boolean unchanged = false;
         String errorMessage = "";
+        Reader contentReader = null;
         
         try {
             Document document = new Document();
@@ -145,17 +652,67 @@ public class Indexer {
             // Aggiungi il nome del file come TextField (tokenizzato) per supportare query di frase
             document.add(new TextField("filename", file.getName(), Field.Store.YES));
             
-            // Leggi e aggiungi il contenuto del file come TextField (tokenizzato)
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                StringBuilder content = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    content.append(line).append("\n");
+            // L'hash viene calcolato sui byte nella stessa lettura che carica o archivia
+            // il contenuto. Solo se la dimensione non è cambiata il file potrebbe essere
+            // invariato: in tal caso, se il testo non viene caricato in memoria, l'hash
+            // si calcola prima, così se è cambiata solo la data di modifica il file non
+            // viene archiviato né analizzato
+            long readStart = System.nanoTime();
+            Path filePath = file.toPath();
+            MessageDigest digest = newContentDigest();
+            String hash = null;
+            String content = null;
+            if (contentStorage == ContentStorage.STORED) {
+                content = readContent(new DigestInputStream(Files.newInputStream(filePath), digest), size);
+                hash = toHex(digest.digest());
+            } else if (previous != null && previous.size == size) {
+                hash = hashFile(filePath);
+            }
+            if (previous != null && hash != null && hash.equals(previous.hash)) {
+                // Solo la data di modifica è cambiata: il contenuto indicizzato è ancora valido.
+                // Si aggiorna la data nell'indice, così i prossimi aggiornamenti non rileggono il file
+                session.writer.updateNumericDocValue(new Term(PATH_FIELD, path), MTIME_FIELD, lastModified);
+                unchanged = true;
+                metrics.recordPhase(IndexingMetrics.Phase.READ, System.nanoTime() - readStart);
+                metrics.recordSkippedFile();
+                return 0;
+            }
+            
+            if (content != null) {
+                document.add(new Field("content", content, CONTENT_FIELD_TYPE));
+            } else {
+                if (contentStorage == ContentStorage.EXTERNAL) {
+                    long pointer;
+                    if (hash == null) {
+                        pointer = contentStore.append(openContentReader(new DigestInputStream(Files.newInputStream(filePath), digest)));
+                        hash = toHex(digest.digest());
+                    } else {
+                        pointer = contentStore.append(openContentReader(Files.newInputStream(filePath)));
+                    }
+                    document.add(new StoredField(CONTENT_POINTER_FIELD, pointer));
+                } else if (hash == null) {
+                    // Il campo dell'hash deve essere pronto prima che l'analisi consumi il Reader
+                    hash = hashFile(filePath);
                 }
-                document.add(new TextField("content", content.toString(), Field.Store.YES));
+                // Il Reader viene consumato dall'IndexWriter durante l'analisi del documento
+                contentReader = openContentReader(Files.newInputStream(filePath));
+                document.add(new Field("content", contentReader, CONTENT_INDEXED_FIELD_TYPE));
             }
+            metrics.recordPhase(IndexingMetrics.Phase.READ, System.nanoTime() - readStart);
             
-            writer.addDocument(document);
+            // Campi di controllo per l'aggiornamento incrementale
+            document.add(new StringField(PATH_FIELD, path, Field.Store.YES));
+            document.add(new StoredField(SIZE_FIELD, size));
+            document.add(new NumericDocValuesField(MTIME_FIELD, lastModified));
+            document.add(new StoredField(HASH_FIELD, hash));
+            
+            long analyzeStart = System.nanoTime();
+            if (session.indexedFiles != null) {
+                session.writer.updateDocument(new Term(PATH_FIELD, path), document);
+            } else {
+                session.writer.addDocument(document);
+            }
+            metrics.recordPhase(IndexingMetrics.Phase.ANALYZE, System.nanoTime() - analyzeStart);
             successful = true;
             return 1;
         } catch (Exception e) {
@@ -166,16 +723,170 @@ public class Indexer {
             errorMessage = e.getMessage() + "\n" + sw.toString();
             return 0;
         } finally {
-            long processingTime = System.currentTimeMillis() - startTime;
-            metrics.recordFileMetric(file.getName(), processingTime, successful, errorMessage);
+            if (contentReader != null) {
+                // Normalmente già chiuso dall'analyzer; serve se l'aggiunta del documento fallisce prima
+                contentReader.close();
+            }
+            long processingTime = System.nanoTime() - startTime;
+            if (!unchanged) {
+                metrics.recordFileMetric(file.getName(), processingTime, successful, errorMessage);
+            }
         }
     }
 
     /**
-     * Chiude gli analyzer.
+     * Indicizza (o reindicizza) un singolo file, sostituendo l'eventuale documento
+     * con lo stesso percorso. Usato per applicare le modifiche segnalate dal watcher.
+     * @param writer IndexWriter ottenuto da {@link #openWriter()}
+     * @param dataRoot directory dei dati rispetto a cui calcolare il percorso del file
+     * @param file file da indicizzare
+     * @return 1 se il file è stato indicizzato, 0 altrimenti
+     * @throws IOException in caso di errori di I/O
+     */
+    int indexFile(IndexWriter writer, Path dataRoot, File file) throws IOException {
+        return indexFile(new IndexingSession(writer, dataRoot, new ConcurrentHashMap<>()), file);
+    }
+
+    /**
+     * Rimuove dall'indice un file o, se il percorso era una directory, tutti i file in essa contenuti.
+     * @param writer IndexWriter ottenuto da {@link #openWriter()}
+     * @param dataRoot directory dei dati rispetto a cui calcolare il percorso del file
+     * @param file file o directory rimossi
+     * @throws IOException in caso di errori di I/O
+     */
+    void deleteFile(IndexWriter writer, Path dataRoot, File file) throws IOException {
+        String path = new IndexingSession(writer, dataRoot, null).relativePath(file);
+        writer.deleteDocuments(
+                new TermQuery(new Term(PATH_FIELD, path)),
+                new PrefixQuery(new Term(PATH_FIELD, path + "/")));
+        metrics.recordDeletedFile();
+    }
+
+    /**
+     * Calcola l'hash SHA-256 dei byte di un file, leggendolo a blocchi.
+     */
+    private static String hashFile(Path path) throws IOException {
+        MessageDigest digest = newContentDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Apre un Reader sul contenuto di un file codificato in UTF-8.
+     * Le sequenze di byte non valide vengono sostituite invece di interrompere l'indicizzazione.
+     */
+    private static Reader openContentReader(InputStream in) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new InputStreamReader(in, decoder);
+    }
+
+    /**
+     * Legge l'intero contenuto di un file UTF-8 in una stringa, senza spezzarlo in righe.
+     * Lo stream viene letto fino alla fine e chiuso.
+     * @param size dimensione del file in byte, usata per dimensionare il buffer
+     */
+    private static String readContent(InputStream in, long size) throws IOException {
+        // In UTF-8 il numero di caratteri non supera mai il numero di byte
+        StringBuilder content = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+        char[] buffer = new char[READ_BUFFER_SIZE / 8];
+        try (Reader reader = openContentReader(in)) {
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                content.append(buffer, 0, read);
+            }
+        }
+        return content.toString();
+    }
+
+    /**
+     * Crea il digest usato per l'hash del contenuto dei file.
+     */
+    private static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 è disponibile in ogni JVM conforme
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converte un array di byte nella sua rappresentazione esadecimale.
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Chiude gli analyzer e l'eventuale archivio esterno dei contenuti.
      */
-    public void close() {
+    public synchronized void close() {
         filenameAnalyzer.close();
         contentAnalyzer.close();
+        closeContentStore();
+    }
+
+    private synchronized void closeContentStore() {
+        if (contentStore != null) {
+            try {
+                contentStore.close();
+            } catch (IOException e) {
+                System.err.println("Errore durante la chiusura dell'archivio dei contenuti: " + e.getMessage());
+            }
+            contentStore = null;
+        }
+    }
+
+    /**
+     * Stato di un file così come registrato nell'indice.
+     */
+    private static final class IndexedFile {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        IndexedFile(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Stato condiviso da tutti i file di una singola esecuzione di indicizzazione.
+     */
+    private static final class IndexingSession {
+        private final IndexWriter writer;
+        private final Path dataRoot;
+        /** File già indicizzati non ancora visitati; null durante la creazione completa. */
+        private final Map<String, IndexedFile> indexedFiles;
+
+        IndexingSession(IndexWriter writer, Path dataRoot, Map<String, IndexedFile> indexedFiles) {
+            this.writer = writer;
+            this.dataRoot = dataRoot.toAbsolutePath().normalize();
+            this.indexedFiles = indexedFiles;
+        }
+
+        /**
+         * Restituisce il percorso del file relativo alla directory dei dati,
+         * con separatori '/', usato come chiave univoca del documento.
+         */
+        String relativePath(File file) {
+            Path relative = dataRoot.relativize(file.toPath().toAbsolutePath().normalize());
+            return relative.toString().replace(File.separatorChar, '/');
+        }
     }
 }
\ No newline at end of file
@@ -1,48 +1,130 @@
 package it.uniroma3.lucene;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.OptionalDouble;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Classe per la raccolta e l'analisi delle metriche di indicizzazione.
  * Fornisce funzionalità per misurare i tempi di indicizzazione, contare i file
  * e rilevare errori durante il processo.
+ * <p>
+ * La registrazione è pensata per l'indicizzazione parallela: i contatori sono
+ * {@link LongAdder} e le statistiche dei file vengono aggiornate in un accumulatore
+ * per thread, senza contesa tra i worker, e riunite quando si leggono.
+ * <p>
+ * La memoria occupata non dipende dal numero di file: media e varianza sono calcolate
+ * in modo incrementale (algoritmo di Welford), dei file più lenti vengono conservati
+ * solo i primi {@value #SLOWEST_FILES}, degli errori solo i primi {@value #MAX_RETAINED_ERRORS}.
+ * Il dettaglio di ogni file può essere scritto su disco con {@link #setDetailFile(Path)}.
+ * <p>
+ * I tempi sono misurati in nanosecondi e raccolti in istogrammi ({@link LatencyHistogram}),
+ * sia per l'elaborazione complessiva di ogni file sia per le singole fasi ({@link Phase}).
  */
 public class IndexingMetrics {
-    private int totalFiles;
-    private int successfulFiles;
-    private int failedFiles;
-    private long startTime;
-    private long endTime;
-    private final List<FileMetric> fileMetrics;
-    private final List<String> errors;
+    /** Numero di file più lenti conservati per il report e per il rilevamento delle anomalie. */
+    private static final int SLOWEST_FILES = 20;
+    /** Numero massimo di messaggi di errore conservati. */
+    private static final int MAX_RETAINED_ERRORS = 100;
+    /** Caratteri di dettaglio accumulati da un thread prima di scriverli su disco. */
+    private static final int DETAIL_CHUNK_CHARS = 64 * 1024;
+    /** Dimensione del buffer usato per scrivere i report. */
+    private static final int REPORT_BUFFER_SIZE = 64 * 1024;
+    private static final Comparator<FileMetric> BY_PROCESSING_TIME = Comparator.comparingLong(FileMetric::getProcessingNanos);
+
+    private final LongAdder totalFiles = new LongAdder();
+    private final LongAdder successfulFiles = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private final LongAdder skippedFiles = new LongAdder();
+    private final LongAdder deletedFiles = new LongAdder();
+    private volatile long startTime;
+    private volatile long endTime;
+    /** Accumulatori dei thread attivi che hanno registrato almeno un file. */
+    private final Queue<ThreadStats> threadStats = new ConcurrentLinkedQueue<>();
+    /**
+     * Statistiche dei thread terminati, riunite da {@link #releaseThread()}. Il suo lock
+     * rende atomico il passaggio di un accumulatore da {@link #threadStats} a qui.
+     */
+    private final ThreadStats retiredStats = new ThreadStats();
+    private final ThreadLocal<ThreadStats> localStats = ThreadLocal.withInitial(() -> {
+        ThreadStats stats = new ThreadStats();
+        threadStats.add(stats);
+        return stats;
+    });
+    private final Queue<String> errors;
+    private final AtomicInteger errorCount = new AtomicInteger();
+    /** File in cui scrivere il dettaglio di ogni file elaborato, oppure null. */
+    private volatile Path detailFile;
+    private final Object detailLock = new Object();
     private final Path metricsDirectory;
+    /** Tempi di elaborazione dei file indicizzati con successo. */
+    private final LatencyHistogram fileProcessingTimes = new LatencyHistogram();
+    private final Map<Phase, LatencyHistogram> phaseTimes = new EnumMap<>(Phase.class);
+
+    /**
+     * Fasi dell'indicizzazione misurate separatamente.
+     */
+    public enum Phase {
+        /**
+         * Lettura del file: calcolo dell'hash e caricamento del contenuto (o copia
+         * nell'archivio esterno). Con il contenuto letto in streaming la lettura
+         * avviene durante l'analisi.
+         */
+        READ("read"),
+        /** Analisi e inversione del documento nel buffer in memoria dell'IndexWriter. */
+        ANALYZE("analyze"),
+        /** Scrittura persistente dell'indice: commit dei segmenti e sincronizzazione dell'archivio. */
+        WRITE("write");
+
+        private final String reportName;
+
+        Phase(String reportName) {
+            this.reportName = reportName;
+        }
+
+        public String getReportName() {
+            return reportName;
+        }
+    }
 
     /**
      * Classe interna per memorizzare le metriche di un singolo file.
      */
     public static class FileMetric {
         private final String fileName;
-        private final long processingTime;
+        private final long processingNanos;
         private final boolean successful;
         private final String errorMessage;
 
-        public FileMetric(String fileName, long processingTime, boolean successful, String errorMessage) {
+        public FileMetric(String fileName, long processingNanos, boolean successful, String errorMessage) {
             this.fileName = fileName;
-            this.processingTime = processingTime;
+            this.processingNanos = processingNanos;
             this.successful = successful;
             this.errorMessage = errorMessage;
         }
@@ -51,8 +133,15 @@ public class IndexingMetrics {
             return fileName;
         }
 
+        /**
+         * @return tempo di elaborazione in millisecondi
+         */
         public long getProcessingTime() {
-            return processingTime;
+            return TimeUnit.NANOSECONDS.toMillis(processingNanos);
+        }
+
+        public long getProcessingNanos() {
+            return processingNanos;
         }
 
         public boolean isSuccessful() {
@@ -64,15 +153,124 @@ public class IndexingMetrics {
         }
     }
 
+    /**
+     * Statistiche dei file registrati da un thread. Il lock è conteso solo quando
+     * le statistiche vengono lette, quindi per il thread proprietario costa pochissimo.
+     */
+    private final class ThreadStats {
+        private long count;
+        private double mean;
+        private double m2;
+        /** File più lenti, in un min-heap: la radice è il primo da scartare. */
+        private final PriorityQueue<FileMetric> slowest = new PriorityQueue<>(BY_PROCESSING_TIME);
+        private final StringBuilder detail = new StringBuilder();
+
+        synchronized void record(FileMetric metric) {
+            if (metric.isSuccessful()) {
+                // Aggiornamento di Welford di media e somma dei quadrati degli scarti
+                count++;
+                double delta = metric.getProcessingNanos() - mean;
+                mean += delta / count;
+                m2 += delta * (metric.getProcessingNanos() - mean);
+
+                if (slowest.size() < SLOWEST_FILES) {
+                    slowest.add(metric);
+                } else if (metric.getProcessingNanos() > slowest.peek().getProcessingNanos()) {
+                    slowest.poll();
+                    slowest.add(metric);
+                }
+            }
+
+            if (detailFile != null) {
+                appendDetail(detail, metric);
+                if (detail.length() >= DETAIL_CHUNK_CHARS) {
+                    flushDetail();
+                }
+            }
+        }
+
+        synchronized void flushDetail() {
+            if (detail.length() > 0) {
+                writeDetail(detail);
+                detail.setLength(0);
+            }
+        }
+
+        synchronized void addTo(Summary summary) {
+            summary.add(count, mean, m2);
+            summary.slowest.addAll(slowest);
+        }
+
+        /**
+         * Trasferisce le statistiche in un altro accumulatore e azzera questo.
+         */
+        synchronized void moveTo(ThreadStats target) {
+            flushDetail();
+            synchronized (target) {
+                if (count > 0) {
+                    long total = target.count + count;
+                    double delta = mean - target.mean;
+                    target.mean += delta * count / total;
+                    target.m2 += m2 + delta * delta * target.count * count / total;
+                    target.count = total;
+                }
+                for (FileMetric metric : slowest) {
+                    if (target.slowest.size() < SLOWEST_FILES) {
+                        target.slowest.add(metric);
+                    } else if (metric.getProcessingNanos() > target.slowest.peek().getProcessingNanos()) {
+                        target.slowest.poll();
+                        target.slowest.add(metric);
+                    }
+                }
+            }
+            count = 0;
+            mean = 0;
+            m2 = 0;
+            slowest.clear();
+        }
+    }
+
+    /**
+     * Statistiche riunite dagli accumulatori dei thread.
+     */
+    private static final class Summary {
+        private long count;
+        private double mean;
+        private double m2;
+        private final List<FileMetric> slowest = new ArrayList<>();
+
+        /**
+         * Combina media e somma dei quadrati di due insiemi di campioni (Chan et al.).
+         */
+        void add(long otherCount, double otherMean, double otherM2) {
+            if (otherCount == 0) {
+                return;
+            }
+            long total = count + otherCount;
+            double delta = otherMean - mean;
+            mean += delta * otherCount / total;
+            m2 += otherM2 + delta * delta * count * otherCount / total;
+            count = total;
+        }
+
+        double standardDeviation() {
+            return count < 2 ? 0 : Math.sqrt(m2 / count);
+        }
+
+        List<FileMetric> slowestFiles() {
+            slowest.sort(BY_PROCESSING_TIME.reversed());
+            return slowest.size() > SLOWEST_FILES ? slowest.subList(0, SLOWEST_FILES) : slowest;
+        }
+    }
+
     /**
      * Costruttore della classe IndexingMetrics.
      */
     public IndexingMetrics() {
-        this.totalFiles = 0;
-        this.successfulFiles = 0;
-        this.failedFiles = 0;
-        this.fileMetrics = new ArrayList<>();
-        this.errors = new ArrayList<>();
+        this.errors = new ConcurrentLinkedQueue<>();
+        for (Phase phase : Phase.values()) {
+            phaseTimes.put(phase, new LatencyHistogram());
+        }
         this.metricsDirectory = Paths.get("metrics");
         
         // Crea la directory delle metriche se non esiste
@@ -93,40 +291,171 @@ public class IndexingMetrics {
     }
 
     /**
-     * Termina la misurazione del tempo di indicizzazione.
+     * Termina la misurazione del tempo di indicizzazione e scrive su disco il dettaglio
+     * dei file ancora in memoria.
      */
     public void endIndexing() {
         this.endTime = System.currentTimeMillis();
+        if (detailFile != null) {
+            for (ThreadStats stats : threadStats) {
+                stats.flushDetail();
+            }
+        }
+    }
+
+    /**
+     * Riunisce le statistiche dei thread.
+     */
+    private Summary summarize() {
+        Summary summary = new Summary();
+        synchronized (retiredStats) {
+            retiredStats.addTo(summary);
+            for (ThreadStats stats : threadStats) {
+                stats.addTo(summary);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Riunisce le statistiche del thread chiamante con quelle dei thread terminati e
+     * ne libera l'accumulatore. Va invocato dai worker che non registreranno più file,
+     * così che le esecuzioni successive, con nuovi thread, non facciano crescere
+     * il numero di accumulatori.
+     */
+    public void releaseThread() {
+        ThreadStats stats = localStats.get();
+        localStats.remove();
+        synchronized (retiredStats) {
+            stats.moveTo(retiredStats);
+            threadStats.remove(stats);
+        }
+    }
+
+    /**
+     * @return numero di accumulatori di thread ancora attivi
+     */
+    int getActiveThreadStatsCount() {
+        return threadStats.size();
+    }
+
+    /**
+     * Abilita la scrittura su disco del dettaglio di ogni file elaborato (nome, esito,
+     * tempo in nanosecondi, prima riga dell'errore), in formato CSV. I file vengono
+     * scritti a blocchi durante l'indicizzazione e al termine di ogni esecuzione.
+     * @param file file di destinazione, sovrascritto; null per disabilitare
+     * @throws IOException se il file non può essere creato
+     */
+    public void setDetailFile(Path file) throws IOException {
+        if (file != null) {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, "fileName,successful,processingNanos,errorMessage\n".getBytes(StandardCharsets.UTF_8));
+        }
+        this.detailFile = file;
+    }
+
+    private static void appendDetail(StringBuilder detail, FileMetric metric) {
+        String error = metric.getErrorMessage();
+        if (error != null && error.indexOf('\n') >= 0) {
+            error = error.substring(0, error.indexOf('\n'));
+        }
+        detail.append('"').append(metric.getFileName().replace("\"", "\"\"")).append("\",")
+              .append(metric.isSuccessful()).append(',')
+              .append(metric.getProcessingNanos()).append(',');
+        if (error != null && !error.isEmpty()) {
+            detail.append('"').append(error.replace("\"", "\"\"")).append('"');
+        }
+        detail.append('\n');
+    }
+
+    private void writeDetail(CharSequence chunk) {
+        synchronized (detailLock) {
+            Path file = detailFile;
+            if (file == null) {
+                return;
+            }
+            try {
+                Files.write(file, chunk.toString().getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Errore nella scrittura del dettaglio delle metriche: " + e.getMessage());
+            }
+        }
     }
 
     /**
      * Registra le metriche per un singolo file.
+     * Può essere invocato contemporaneamente dai worker dell'indicizzazione parallela.
      * 
      * @param fileName Nome del file
-     * @param processingTime Tempo di elaborazione in millisecondi
+     * @param processingNanos Tempo di elaborazione in nanosecondi
      * @param successful Indica se l'indicizzazione è avvenuta con successo
      * @param errorMessage Messaggio di errore (se presente)
      */
-    public void recordFileMetric(String fileName, long processingTime, boolean successful, String errorMessage) {
-        FileMetric metric = new FileMetric(fileName, processingTime, successful, errorMessage);
-        fileMetrics.add(metric);
+    public void recordFileMetric(String fileName, long processingNanos, boolean successful, String errorMessage) {
+        localStats.get().record(new FileMetric(fileName, processingNanos, successful, successful ? null : errorMessage));
         
-        totalFiles++;
+        totalFiles.increment();
         if (successful) {
-            successfulFiles++;
+            successfulFiles.increment();
+            fileProcessingTimes.record(processingNanos);
         } else {
-            failedFiles++;
-            errors.add("Errore nell'indicizzazione di " + fileName + ": " + errorMessage);
+            failedFiles.increment();
+            if (errorCount.incrementAndGet() <= MAX_RETAINED_ERRORS) {
+                errors.add("Errore nell'indicizzazione di " + fileName + ": " + errorMessage);
+            }
         }
     }
 
+    /**
+     * Registra la durata di una fase dell'indicizzazione.
+     * @param phase fase misurata
+     * @param nanos durata in nanosecondi
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        phaseTimes.get(phase).record(nanos);
+    }
+
+    /**
+     * Restituisce l'istogramma dei tempi di elaborazione dei file indicizzati con successo.
+     * @return istogramma in nanosecondi
+     */
+    public LatencyHistogram getFileProcessingHistogram() {
+        return fileProcessingTimes;
+    }
+
+    /**
+     * Restituisce l'istogramma dei tempi di una fase.
+     * @param phase fase dell'indicizzazione
+     * @return istogramma in nanosecondi
+     */
+    public LatencyHistogram getPhaseHistogram(Phase phase) {
+        return phaseTimes.get(phase);
+    }
+
+    /**
+     * Registra un file saltato perché invariato rispetto all'indice (aggiornamento incrementale).
+     */
+    public void recordSkippedFile() {
+        skippedFiles.increment();
+    }
+
+    /**
+     * Registra un file rimosso dall'indice perché non più presente (aggiornamento incrementale).
+     */
+    public void recordDeletedFile() {
+        deletedFiles.increment();
+    }
+
     /**
      * Restituisce il numero totale di file elaborati.
      * 
      * @return Numero totale di file
      */
     public int getTotalFiles() {
-        return totalFiles;
+        return totalFiles.intValue();
     }
 
     /**
@@ -135,7 +464,7 @@ public class IndexingMetrics {
      * @return Numero di file indicizzati con successo
      */
     public int getSuccessfulFiles() {
-        return successfulFiles;
+        return successfulFiles.intValue();
     }
 
     /**
@@ -144,16 +473,49 @@ public class IndexingMetrics {
      * @return Numero di file con errori
      */
     public int getFailedFiles() {
-        return failedFiles;
+        return failedFiles.intValue();
+    }
+
+    /**
+     * Restituisce il numero di file saltati perché invariati.
+     * 
+     * @return Numero di file invariati
+     */
+    public int getSkippedFiles() {
+        return skippedFiles.intValue();
+    }
+
+    /**
+     * Restituisce il numero di file rimossi dall'indice.
+     * 
+     * @return Numero di file rimossi
+     */
+    public int getDeletedFiles() {
+        return deletedFiles.intValue();
+    }
+
+    /**
+     * Indica se un'indicizzazione è iniziata e non ancora terminata.
+     * 
+     * @return true durante l'indicizzazione
+     */
+    public boolean isIndexingInProgress() {
+        return endTime < startTime;
     }
 
     /**
-     * Restituisce il tempo totale di indicizzazione in millisecondi.
+     * Restituisce il tempo totale di indicizzazione in millisecondi; se l'indicizzazione
+     * è in corso, il tempo trascorso finora.
      * 
      * @return Tempo totale di indicizzazione
      */
     public long getTotalIndexingTime() {
-        return endTime - startTime;
+        long start = startTime;
+        long end = endTime;
+        if (end < start) {
+            end = System.currentTimeMillis();
+        }
+        return end - start;
     }
 
     /**
@@ -162,41 +524,48 @@ public class IndexingMetrics {
      * @return Tempo medio di indicizzazione per file
      */
     public double getAverageFileProcessingTime() {
-        OptionalDouble average = fileMetrics.stream()
-                .filter(FileMetric::isSuccessful)
-                .mapToLong(FileMetric::getProcessingTime)
-                .average();
-        return average.orElse(0.0);
+        return fileProcessingTimes.getMeanNanos() / 1e6;
     }
 
     /**
      * Restituisce il tempo massimo di indicizzazione per un singolo file.
      * 
-     * @return Tempo massimo di indicizzazione
+     * @return Tempo massimo di indicizzazione in millisecondi
      */
     public long getMaxFileProcessingTime() {
-        return fileMetrics.stream()
-                .filter(FileMetric::isSuccessful)
-                .mapToLong(FileMetric::getProcessingTime)
-                .max()
-                .orElse(0);
+        return TimeUnit.NANOSECONDS.toMillis(fileProcessingTimes.getMaxNanos());
     }
 
     /**
      * Restituisce il tempo minimo di indicizzazione per un singolo file.
      * 
-     * @return Tempo minimo di indicizzazione
+     * @return Tempo minimo di indicizzazione in millisecondi
      */
     public long getMinFileProcessingTime() {
-        return fileMetrics.stream()
-                .filter(FileMetric::isSuccessful)
-                .mapToLong(FileMetric::getProcessingTime)
-                .min()
-                .orElse(0);
+        return TimeUnit.NANOSECONDS.toMillis(fileProcessingTimes.getMinNanos());
+    }
+
+    /**
+     * Restituisce la deviazione standard dei tempi di elaborazione dei file indicizzati con successo.
+     * 
+     * @return Deviazione standard in millisecondi
+     */
+    public double getFileProcessingStdDev() {
+        return summarize().standardDeviation() / 1e6;
     }
 
     /**
-     * Restituisce la lista degli errori verificatisi durante l'indicizzazione.
+     * Restituisce i file indicizzati con successo che hanno richiesto più tempo.
+     * 
+     * @return al più {@value #SLOWEST_FILES} file, dal più lento
+     */
+    public List<FileMetric> getSlowestFiles() {
+        return new ArrayList<>(summarize().slowestFiles());
+    }
+
+    /**
+     * Restituisce gli errori verificatisi durante l'indicizzazione; oltre i primi
+     * {@value #MAX_RETAINED_ERRORS} gli errori vengono solo contati.
      * 
      * @return Lista degli errori
      */
@@ -204,6 +573,10 @@ public class IndexingMetrics {
         return new ArrayList<>(errors);
     }
 
+    private int getOmittedErrors() {
+        return Math.max(0, errorCount.get() - MAX_RETAINED_ERRORS);
+    }
+
     /**
      * Genera un report delle metriche in formato JSON.
      * 
@@ -214,30 +587,38 @@ public class IndexingMetrics {
         
         // Informazioni generali
         report.put("timestamp", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
-        report.put("totalFiles", totalFiles);
-        report.put("successfulFiles", successfulFiles);
-        report.put("failedFiles", failedFiles);
+        report.put("totalFiles", getTotalFiles());
+        report.put("successfulFiles", getSuccessfulFiles());
+        report.put("failedFiles", getFailedFiles());
+        report.put("skippedFiles", getSkippedFiles());
+        report.put("deletedFiles", getDeletedFiles());
         report.put("totalIndexingTimeMs", getTotalIndexingTime());
         report.put("averageFileProcessingTimeMs", getAverageFileProcessingTime());
         report.put("maxFileProcessingTimeMs", getMaxFileProcessingTime());
         report.put("minFileProcessingTimeMs", getMinFileProcessingTime());
+        report.put("stdDevFileProcessingTimeMs", getFileProcessingStdDev());
         
         // Errori
-        report.put("errors", errors);
+        report.put("errors", getErrors());
+        report.put("omittedErrors", getOmittedErrors());
         
-        // Metriche dettagliate per file
-        List<Map<String, Object>> fileMetricsArray = new ArrayList<>();
-        for (FileMetric metric : fileMetrics) {
-            Map<String, Object> fileMetricObj = new HashMap<>();
-            fileMetricObj.put("fileName", metric.getFileName());
-            fileMetricObj.put("processingTimeMs", metric.getProcessingTime());
-            fileMetricObj.put("successful", metric.isSuccessful());
-            if (!metric.isSuccessful()) {
-                fileMetricObj.put("errorMessage", metric.getErrorMessage());
-            }
-            fileMetricsArray.add(fileMetricObj);
+        // File più lenti
+        List<Map<String, Object>> slowest = new ArrayList<>();
+        for (FileMetric metric : getSlowestFiles()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("fileName", metric.getFileName());
+            entry.put("processingTimeMs", metric.getProcessingNanos() / 1e6);
+            slowest.add(entry);
+        }
+        report.put("slowestFiles", slowest);
+        
+        // Distribuzione dei tempi, per file e per fase
+        report.put("fileProcessingTime", histogramSummary(fileProcessingTimes));
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            phases.put(phase.getReportName(), histogramSummary(phaseTimes.get(phase)));
         }
-        report.put("fileMetrics", fileMetricsArray);
+        report.put("phases", phases);
         
         // Analisi delle anomalie
         report.put("anomalies", detectAnomalies());
@@ -246,118 +627,153 @@ public class IndexingMetrics {
     }
 
     /**
-     * Genera e salva un report in formato JSON
+     * Riassume un istogramma con numero di campioni, media e percentili in millisecondi.
+     */
+    private static Map<String, Object> histogramSummary(LatencyHistogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("meanMs", histogram.getMeanNanos() / 1e6);
+        summary.put("p50Ms", histogram.getValueAtPercentile(50) / 1e6);
+        summary.put("p90Ms", histogram.getValueAtPercentile(90) / 1e6);
+        summary.put("p99Ms", histogram.getValueAtPercentile(99) / 1e6);
+        summary.put("maxMs", histogram.getMaxNanos() / 1e6);
+        return summary;
+    }
+
+    /**
+     * Genera e salva un report in formato JSON. Se il percorso termina con ".gz" il
+     * report viene compresso con gzip.
      * 
      * @param filePath Il percorso del file dove salvare il report
      */
     public void saveJsonReport(String filePath) {
-        try {
-            Map<String, Object> report = generateJsonReport();
-            String jsonString = mapToJsonString(report);
-            
-            // Crea la directory se non esiste
-            Path path = Paths.get(filePath);
-            Files.createDirectories(path.getParent());
-            
-            // Salva il report
-            Files.write(path, jsonString.getBytes(StandardCharsets.UTF_8));
+        try (Writer out = openReportWriter(Paths.get(filePath))) {
+            writeJsonReport(out);
             System.out.println("Report JSON salvato in: " + filePath);
         } catch (IOException e) {
             System.err.println("Errore nel salvataggio del report JSON: " + e.getMessage());
         }
     }
-    
+
     /**
-     * Converte una Map in una stringa JSON.
+     * Scrive il report in formato JSON man mano che lo genera, senza costruirlo in memoria.
+     * Può essere chiamato anche durante l'indicizzazione.
      * 
-     * @param map Map da convertire
-     * @return Stringa JSON
+     * @param out destinazione del report
+     * @throws IOException se la scrittura fallisce
      */
-    private String mapToJsonString(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{\n");
+    public void writeJsonReport(Writer out) throws IOException {
+        out.write("{\n");
         int i = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
+        for (Map.Entry<String, Object> entry : generateJsonReport().entrySet()) {
             if (i > 0) {
-                json.append(",\n");
+                out.write(",\n");
             }
-            json.append("  \"").append(entry.getKey()).append("\": ");
-            json.append(objectToJsonString(entry.getValue()));
+            out.write("  ");
+            writeJsonString(out, entry.getKey());
+            out.write(": ");
+            writeJsonValue(out, entry.getValue(), "  ");
             i++;
         }
-        json.append("\n}");
-        return json.toString();
+        out.write("\n}\n");
+    }
+
+    /**
+     * Apre un Writer bufferizzato sul file del report, creando le directory mancanti.
+     */
+    private static Writer openReportWriter(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        OutputStream stream = Files.newOutputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, REPORT_BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), REPORT_BUFFER_SIZE);
     }
     
     /**
-     * Converte un oggetto in una stringa JSON.
+     * Scrive un valore in formato JSON.
      * 
-     * @param obj Oggetto da convertire
-     * @return Stringa JSON
+     * @param out destinazione
+     * @param obj valore da scrivere
+     * @param indent rientro della riga che contiene il valore
      */
-    private String objectToJsonString(Object obj) {
+    private static void writeJsonValue(Writer out, Object obj, String indent) throws IOException {
         if (obj == null) {
-            return "null";
-        } else if (obj instanceof String) {
-            return "\"" + ((String) obj).replace("\"", "\\\"") + "\"";
+            out.write("null");
         } else if (obj instanceof Number || obj instanceof Boolean) {
-            return obj.toString();
+            out.write(obj.toString());
         } else if (obj instanceof List) {
-            List<?> list = (List<?>) obj;
-            StringBuilder json = new StringBuilder("[\n");
-            for (int i = 0; i < list.size(); i++) {
-                if (i > 0) {
-                    json.append(",\n");
-                }
-                json.append("    ").append(objectToJsonString(list.get(i)));
+            out.write("[");
+            int i = 0;
+            for (Object item : (List<?>) obj) {
+                out.write(i > 0 ? ",\n" : "\n");
+                out.write(indent);
+                out.write("  ");
+                writeJsonValue(out, item, indent + "  ");
+                i++;
             }
-            json.append("\n  ]");
-            return json.toString();
+            if (i > 0) {
+                out.write("\n");
+                out.write(indent);
+            }
+            out.write("]");
         } else if (obj instanceof Map) {
-            Map<?, ?> map = (Map<?, ?>) obj;
-            StringBuilder json = new StringBuilder("{\n");
+            out.write("{");
             int i = 0;
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-                if (i > 0) {
-                    json.append(",\n");
-                }
-                json.append("    \"").append(entry.getKey()).append("\": ");
-                json.append(objectToJsonString(entry.getValue()));
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                out.write(i > 0 ? ",\n" : "\n");
+                out.write(indent);
+                out.write("  ");
+                writeJsonString(out, String.valueOf(entry.getKey()));
+                out.write(": ");
+                writeJsonValue(out, entry.getValue(), indent + "  ");
                 i++;
             }
-            json.append("\n  }");
-            return json.toString();
+            if (i > 0) {
+                out.write("\n");
+                out.write(indent);
+            }
+            out.write("}");
         } else {
-            return "\"" + obj.toString() + "\"";
+            writeJsonString(out, obj.toString());
         }
     }
 
     /**
-     * Genera e salva un report in formato CSV
+     * Scrive una stringa JSON, con i caratteri di escape necessari.
+     */
+    private static void writeJsonString(Writer out, String text) throws IOException {
+        out.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * Genera e salva un report in formato CSV. Se il percorso termina con ".gz" il
+     * report viene compresso con gzip.
      * 
      * @param filePath Il percorso del file dove salvare il report
      */
     public void saveCsvReport(String filePath) {
-        try {
-            StringBuilder csv = new StringBuilder();
-            
-            // Intestazione
-            csv.append("fileName,successful,processingTime,errorMessage\n");
-            
-            // Dati dei file
-            for (FileMetric metric : fileMetrics) {
-                csv.append(metric.getFileName()).append(",")
-                   .append(metric.isSuccessful()).append(",")
-                   .append(metric.getProcessingTime()).append(",")
-                   .append(metric.getErrorMessage() != null ? "\"" + metric.getErrorMessage().replace("\"", "\"\"") + "\"" : "")
-                   .append("\n");
-            }
-            
-            // Crea la directory se non esiste
-            Path path = Paths.get(filePath);
-            Files.createDirectories(path.getParent());
-            
-            // Salva il report
-            Files.write(path, csv.toString().getBytes(StandardCharsets.UTF_8));
+        try (Writer out = openReportWriter(Paths.get(filePath))) {
+            writeCsvReport(out);
             System.out.println("Report CSV salvato in: " + filePath);
         } catch (IOException e) {
             System.err.println("Errore nel salvataggio del report CSV: " + e.getMessage());
@@ -365,52 +781,58 @@ public class IndexingMetrics {
     }
 
     /**
-     * Rileva anomalie nelle metriche di indicizzazione.
+     * Scrive il report in formato CSV, una riga per volta. Può essere chiamato anche
+     * durante l'indicizzazione.
      * 
-     * @return Lista contenente le anomalie rilevate
+     * @param out destinazione del report
+     * @throws IOException se la scrittura fallisce
      */
-    private List<Map<String, Object>> detectAnomalies() {
-        List<Map<String, Object>> anomalies = new ArrayList<>();
-        
-        // Calcola la media e la deviazione standard
-        double mean = getAverageFileProcessingTime();
-        double stdDev = calculateStandardDeviation();
+    public void writeCsvReport(Writer out) throws IOException {
+        // Intestazione
+        out.write("metric,count,meanMs,p50Ms,p90Ms,p99Ms,maxMs\n");
         
-        // Identifica i file con tempi di elaborazione anomali (oltre 2 deviazioni standard)
-        for (FileMetric metric : fileMetrics) {
-            if (metric.isSuccessful()) {
-                double zScore = (metric.getProcessingTime() - mean) / stdDev;
-                if (Math.abs(zScore) > 2.0) {
-                    Map<String, Object> anomaly = new HashMap<>();
-                    anomaly.put("fileName", metric.getFileName());
-                    anomaly.put("processingTimeMs", metric.getProcessingTime());
-                    anomaly.put("zScore", zScore);
-                    anomaly.put("type", zScore > 0 ? "slow" : "fast");
-                    anomalies.add(anomaly);
-                }
-            }
+        // Distribuzione dei tempi per file e per fase
+        writeCsvRow(out, "file", fileProcessingTimes);
+        for (Phase phase : Phase.values()) {
+            writeCsvRow(out, phase.getReportName(), phaseTimes.get(phase));
         }
-        
-        return anomalies;
+    }
+
+    private static void writeCsvRow(Writer out, String name, LatencyHistogram histogram) throws IOException {
+        out.write(String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", name, histogram.getCount(),
+                histogram.getMeanNanos() / 1e6, histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(90) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getMaxNanos() / 1e6));
     }
 
     /**
-     * Calcola la deviazione standard dei tempi di elaborazione.
+     * Rileva anomalie nelle metriche di indicizzazione: tra i file più lenti, quelli
+     * che superano la media di oltre 2 deviazioni standard.
      * 
-     * @return Deviazione standard
-     */
-    private double calculateStandardDeviation() {
-        double mean = getAverageFileProcessingTime();
-        double sumSquaredDiff = fileMetrics.stream()
-                .filter(FileMetric::isSuccessful)
-                .mapToDouble(m -> Math.pow(m.getProcessingTime() - mean, 2))
-                .sum();
+     * @return Lista contenente le anomalie rilevate
+     */
+    private List<Map<String, Object>> detectAnomalies() {
+        List<Map<String, Object>> anomalies = new ArrayList<>();
+        Summary summary = summarize();
+        double stdDev = summary.standardDeviation();
+        if (stdDev == 0) {
+            // Tempi tutti uguali (o un solo file): nessun file si discosta dalla media
+            return anomalies;
+        }
         
-        int successfulCount = (int) fileMetrics.stream()
-                .filter(FileMetric::isSuccessful)
-                .count();
+        for (FileMetric metric : summary.slowestFiles()) {
+            double zScore = (metric.getProcessingNanos() - summary.mean) / stdDev;
+            if (zScore > 2.0) {
+                Map<String, Object> anomaly = new HashMap<>();
+                anomaly.put("fileName", metric.getFileName());
+                anomaly.put("processingTimeMs", metric.getProcessingNanos() / 1e6);
+                anomaly.put("zScore", zScore);
+                anomaly.put("type", "slow");
+                anomalies.add(anomaly);
+            }
+        }
         
-        return Math.sqrt(sumSquaredDiff / successfulCount);
+        return anomalies;
     }
 
     /**
@@ -422,20 +844,36 @@ public class IndexingMetrics {
         StringBuilder report = new StringBuilder();
         report.append("=== REPORT DI INDICIZZAZIONE ===\n");
         report.append(String.format("Data: %s\n", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date())));
-        report.append(String.format("File totali elaborati: %d\n", totalFiles));
-        report.append(String.format("File indicizzati con successo: %d\n", successfulFiles));
-        report.append(String.format("File con errori: %d\n", failedFiles));
+        report.append(String.format("File totali elaborati: %d\n", getTotalFiles()));
+        report.append(String.format("File indicizzati con successo: %d\n", getSuccessfulFiles()));
+        report.append(String.format("File con errori: %d\n", getFailedFiles()));
+        report.append(String.format("File invariati (saltati): %d\n", getSkippedFiles()));
+        report.append(String.format("File rimossi dall'indice: %d\n", getDeletedFiles()));
         report.append(String.format("Tempo totale di indicizzazione: %d ms (%.2f secondi)\n", 
                 getTotalIndexingTime(), getTotalIndexingTime() / 1000.0));
-        report.append(String.format("Tempo medio per file: %.2f ms\n", getAverageFileProcessingTime()));
-        report.append(String.format("Tempo massimo per file: %d ms\n", getMaxFileProcessingTime()));
-        report.append(String.format("Tempo minimo per file: %d ms\n", getMinFileProcessingTime()));
+        report.append(String.format("Tempo medio per file: %.3f ms\n", getAverageFileProcessingTime()));
+        report.append(String.format("Tempo massimo per file: %.3f ms\n", fileProcessingTimes.getMaxNanos() / 1e6));
+        report.append(String.format("Tempo minimo per file: %.3f ms\n", fileProcessingTimes.getMinNanos() / 1e6));
+        report.append(String.format("Deviazione standard per file: %.3f ms\n", getFileProcessingStdDev()));
+        report.append(String.format("Percentili per file: p50=%.3f ms, p90=%.3f ms, p99=%.3f ms\n",
+                fileProcessingTimes.getValueAtPercentile(50) / 1e6, fileProcessingTimes.getValueAtPercentile(90) / 1e6,
+                fileProcessingTimes.getValueAtPercentile(99) / 1e6));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = phaseTimes.get(phase);
+            report.append(String.format("Fase %s: n=%d, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, max=%.3f ms\n",
+                    phase.getReportName(), histogram.getCount(), histogram.getValueAtPercentile(50) / 1e6,
+                    histogram.getValueAtPercentile(90) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getMaxNanos() / 1e6));
+        }
         
         if (!errors.isEmpty()) {
             report.append("\nErrori rilevati:\n");
             for (String error : errors) {
                 report.append("- ").append(error).append("\n");
             }
+            if (getOmittedErrors() > 0) {
+                report.append(String.format("... e altri %d errori\n", getOmittedErrors()));
+            }
         }
         
         return report.toString();
@@ -0,0 +1,145 @@
+package it.uniroma3.lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Istogramma delle latenze in nanosecondi, a memoria costante e sicuro per l'uso concorrente.
+ * <p>
+ * I valori sono raggruppati in intervalli log-lineari: fino a {@value #SUB_BUCKETS} ns
+ * ogni valore ha il proprio intervallo, oltre ogni potenza di due è divisa in
+ * {@value #HALF_SUB_BUCKETS} intervalli uguali. L'errore relativo sui percentili è
+ * quindi al più di circa il 3%, per qualunque ordine di grandezza.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(HALF_SUB_BUCKETS);
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Registra una latenza.
+     * @param nanos latenza in nanosecondi (i valori negativi valgono 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+        minNanos.accumulateAndGet(value, Math::min);
+    }
+
+    /**
+     * Aggiunge a questo istogramma i valori registrati in un altro.
+     * @param other istogramma da aggiungere
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalNanos.addAndGet(other.totalNanos.get());
+        maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+        minNanos.accumulateAndGet(other.minNanos.get(), Math::min);
+    }
+
+    /**
+     * Azzera l'istogramma.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        minNanos.set(Long.MAX_VALUE);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Restituisce la latenza minima registrata.
+     * @return latenza minima in nanosecondi, 0 se l'istogramma è vuoto
+     */
+    public long getMinNanos() {
+        long min = minNanos.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    public double getMeanNanos() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * Restituisce la latenza al percentile indicato: il limite superiore dell'intervallo
+     * che contiene il valore, senza superare il massimo registrato.
+     * @param percentile percentile tra 0 e 100
+     * @return latenza in nanosecondi, 0 se l'istogramma è vuoto
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile non valido: " + percentile);
+        }
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueInBucket(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Indice dell'intervallo che contiene il valore.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Valore massimo contenuto nell'intervallo.
+     */
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long mantissa = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, media=%.3f ms, p50=%.3f ms, p95=%.3f ms, p99=%.3f ms, p99.9=%.3f ms, max=%.3f ms",
+                getCount(), getMeanNanos() / 1e6, getValueAtPercentile(50) / 1e6, getValueAtPercentile(95) / 1e6,
+                getValueAtPercentile(99) / 1e6, getValueAtPercentile(99.9) / 1e6, getMaxNanos() / 1e6);
+    }
+}
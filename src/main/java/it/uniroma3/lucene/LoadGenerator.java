@@ -0,0 +1,324 @@
+package it.uniroma3.lucene;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generatore di carico per il {@link Searcher}: riesegue le query di un log
+ * (ad esempio {@code logs/query_log.txt}) o una miscela generata, e misura throughput
+ * e distribuzione delle latenze.
+ * <p>
+ * Sono disponibili due modalità:
+ * <ul>
+ *   <li>a frequenza costante ({@link #runAtRate}): le richieste seguono un calendario
+ *   fisso e la latenza è misurata dall'istante in cui la richiesta era prevista, non da
+ *   quando è partita. Così i ritardi accumulati quando il sistema è saturo entrano nei
+ *   percentili (correzione della <i>coordinated omission</i>);</li>
+ *   <li>a concorrenza costante ({@link #runWithConcurrency}): ogni thread invia la
+ *   richiesta successiva appena riceve la risposta, per misurare il throughput massimo.</li>
+ * </ul>
+ */
+public class LoadGenerator {
+    private static final int DEFAULT_MAX_RESULTS = 10;
+    private static final String FIELD_SEPARATOR = " \\| ";
+    /** Valore restituito dal calendario a esecuzione finita (System.nanoTime() può essere negativo). */
+    private static final long END_OF_RUN = Long.MIN_VALUE;
+
+    private final Searcher searcher;
+    private final List<String> queries;
+    private final int maxResults;
+
+    /**
+     * Costruttore del generatore di carico.
+     * @param searcher searcher da sottoporre a carico
+     * @param queries query da eseguire, ciclicamente nell'ordine dato
+     * @param maxResults numero massimo di risultati per query
+     */
+    public LoadGenerator(Searcher searcher, List<String> queries, int maxResults) {
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("Nessuna query da eseguire");
+        }
+        this.searcher = searcher;
+        this.queries = new ArrayList<>(queries);
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Esito di un'esecuzione del generatore di carico.
+     */
+    public static final class Report {
+        private final double targetQps;
+        private final long scheduled;
+        private final long completed;
+        private final long errors;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+        private final LatencyHistogram serviceTime;
+
+        Report(double targetQps, long scheduled, long completed, long errors, long elapsedNanos,
+               LatencyHistogram latency, LatencyHistogram serviceTime) {
+            this.targetQps = targetQps;
+            this.scheduled = scheduled;
+            this.completed = completed;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+        }
+
+        /** Frequenza richiesta, 0 per l'esecuzione a concorrenza costante. */
+        public double getTargetQps() {
+            return targetQps;
+        }
+
+        /** Richieste completate (comprese quelle terminate con errore). */
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /** Richieste previste dal calendario ma non partite entro la fine dell'esecuzione. */
+        public long getMissed() {
+            return Math.max(0, scheduled - completed);
+        }
+
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : completed * 1e9 / elapsedNanos;
+        }
+
+        /** Latenza dall'istante previsto per la richiesta (corretta) alla risposta. */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /** Tempo di servizio, dall'invio effettivo della richiesta alla risposta. */
+        public LatencyHistogram getServiceTime() {
+            return serviceTime;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (targetQps > 0) {
+                sb.append(String.format("Frequenza richiesta: %.1f query/s%n", targetQps));
+            }
+            sb.append(String.format("Throughput: %.1f query/s (%d query in %.1f s, %d errori",
+                    getThroughput(), completed, elapsedNanos / 1e9, errors));
+            if (getMissed() > 0) {
+                sb.append(", ").append(getMissed()).append(" non eseguite");
+            }
+            sb.append(")\n");
+            sb.append("Latenza:           ").append(latency).append('\n');
+            sb.append("Tempo di servizio: ").append(serviceTime);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Esegue le query a frequenza costante.
+     * @param targetQps query al secondo da inviare
+     * @param threads thread che inviano le richieste (devono bastare a sostenere la frequenza)
+     * @param durationMillis durata dell'esecuzione
+     * @return esito dell'esecuzione
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa
+     */
+    public Report runAtRate(double targetQps, int threads, long durationMillis) throws InterruptedException {
+        if (targetQps <= 0 || threads < 1) {
+            throw new IllegalArgumentException("Parametri di carico non validi: " + targetQps + " query/s, " + threads + " thread");
+        }
+        double intervalNanos = 1e9 / targetQps;
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long scheduled = (long) Math.ceil(durationNanos / intervalNanos);
+        return run(targetQps, scheduled, threads, durationNanos, (sequence, start, end) -> {
+            long i = sequence.getAndIncrement();
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                return END_OF_RUN;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            // Con il sistema saturo le richieste restano in ritardo: oltre la fine non vengono inviate
+            return now < end ? intended : END_OF_RUN;
+        });
+    }
+
+    /**
+     * Esegue le query a concorrenza costante: ogni thread invia una nuova richiesta
+     * appena riceve la risposta alla precedente.
+     * @param concurrency numero di richieste contemporanee
+     * @param durationMillis durata dell'esecuzione
+     * @return esito dell'esecuzione
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa
+     */
+    public Report runWithConcurrency(int concurrency, long durationMillis) throws InterruptedException {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concorrenza non valida: " + concurrency);
+        }
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        return run(0, 0, concurrency, durationNanos, (sequence, start, end) -> {
+            long now = System.nanoTime();
+            return now < end ? now : END_OF_RUN;
+        });
+    }
+
+    /**
+     * Calendario delle richieste di un'esecuzione.
+     */
+    private interface Schedule {
+        /**
+         * Attende il momento di inviare la prossima richiesta.
+         * @return istante previsto per la richiesta, oppure {@link #END_OF_RUN} se l'esecuzione è finita
+         */
+        long next(AtomicLong sequence, long start, long end);
+    }
+
+    private Report run(double targetQps, long scheduled, int threads, long durationNanos, Schedule schedule)
+            throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram serviceTime = new LatencyHistogram();
+        AtomicLong sequence = new AtomicLong();
+        AtomicLong queryIndex = new AtomicLong();
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    long intended;
+                    while ((intended = schedule.next(sequence, start, end)) != END_OF_RUN) {
+                        String query = queries.get((int) (queryIndex.getAndIncrement() % queries.size()));
+                        long sent = System.nanoTime();
+                        try {
+                            searcher.search(query, maxResults);
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        long received = System.nanoTime();
+                        latency.record(received - intended);
+                        serviceTime.record(received - sent);
+                        completed.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Errore nel generatore di carico", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Report(targetQps, scheduled, completed.get(), errors.get(), elapsed, latency, serviceTime);
+    }
+
+    /**
+     * Legge le query da un file di log nel formato di {@code logs/query_log.txt}
+     * ({@code data | esito | query [| errore]}) oppure da un file con una query per riga.
+     * @param logFile file da leggere
+     * @return query nell'ordine del file
+     * @throws IOException in caso di errori di I/O
+     */
+    public static List<String> readQueryLog(Path logFile) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(logFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(FIELD_SEPARATOR, 4);
+            String query = fields.length >= 3 ? fields[2] : line;
+            if (!query.trim().isEmpty()) {
+                queries.add(query.trim());
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Esegue il generatore di carico da linea di comando.
+     * Utilizzo: LoadGenerator &lt;indice&gt; [--log FILE | --generate N] [--seed S] [--source DIR]
+     * [--qps Q --threads T | --concurrency C] [--duration SECONDI] [--warmup SECONDI]
+     * [--max-results N] [--no-cache] [--query-log FILE]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Utilizzo: java LoadGenerator <indice> [--log FILE | --generate N] [--seed S] [--source DIR]"
+                    + " [--qps Q --threads T | --concurrency C] [--duration SECONDI] [--warmup SECONDI]"
+                    + " [--max-results N] [--no-cache] [--query-log FILE]");
+            System.exit(1);
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--no-cache")) {
+                options.put(args[i], "true");
+            } else if (i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            }
+        }
+
+        // Le query eseguite dal test vanno in un log separato, per non alterare quello reale
+        try (Searcher searcher = new Searcher(args[0], Runtime.getRuntime().availableProcessors());
+             QueryLog queryLog = new QueryLog(Paths.get(options.getOrDefault("--query-log", "load_query_log.txt")))) {
+            searcher.setQueryLog(queryLog);
+            List<String> queries;
+            if (options.containsKey("--generate")) {
+                CorpusGenerator generator = new CorpusGenerator(Long.parseLong(options.getOrDefault("--seed", "42")));
+                generator.setSourceDirectory(Paths.get(options.getOrDefault("--source", "data")));
+                queries = generator.generateQueries(Integer.parseInt(options.get("--generate")));
+            } else {
+                queries = readQueryLog(Paths.get(options.getOrDefault("--log", QueryLog.DEFAULT_FILE)));
+            }
+            searcher.setResultCacheEnabled(!options.containsKey("--no-cache"));
+
+            int maxResults = Integer.parseInt(options.getOrDefault("--max-results", String.valueOf(DEFAULT_MAX_RESULTS)));
+            int processors = Runtime.getRuntime().availableProcessors();
+            long durationMillis = (long) (Double.parseDouble(options.getOrDefault("--duration", "30")) * 1000);
+            long warmupMillis = (long) (Double.parseDouble(options.getOrDefault("--warmup", "5")) * 1000);
+            LoadGenerator generator = new LoadGenerator(searcher, queries, maxResults);
+            System.out.println("Query caricate: " + queries.size());
+
+            if (warmupMillis > 0) {
+                System.out.println("Riscaldamento per " + warmupMillis / 1000.0 + " s...");
+                generator.runWithConcurrency(processors, warmupMillis);
+            }
+
+            Report report;
+            if (options.containsKey("--qps")) {
+                int threads = Integer.parseInt(options.getOrDefault("--threads", String.valueOf(processors)));
+                report = generator.runAtRate(Double.parseDouble(options.get("--qps")), threads, durationMillis);
+            } else {
+                int concurrency = Integer.parseInt(options.getOrDefault("--concurrency", String.valueOf(processors)));
+                report = generator.runWithConcurrency(concurrency, durationMillis);
+            }
+            System.out.println(report);
+        } catch (IOException e) {
+            System.err.println("Errore di I/O: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Parametro non valido: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
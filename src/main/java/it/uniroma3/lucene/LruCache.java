@@ -0,0 +1,136 @@
+package it.uniroma3.lucene;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache limitata con politica LRU: quando viene superata la capacità massima
+ * viene rimosso l'elemento usato meno di recente.
+ * Tutti i metodi sono sincronizzati, quindi un'istanza può essere condivisa tra più thread.
+ * @param <K> tipo delle chiavi
+ * @param <V> tipo dei valori
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Costruttore della cache.
+     * @param maxSize numero massimo di elementi (0 per disattivare la cache)
+     */
+    public LruCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("La dimensione della cache non può essere negativa: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        // accessOrder = true: l'ordine di iterazione va dal meno al più recentemente usato
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Restituisce il valore associato alla chiave, aggiornando i contatori di hit e miss.
+     * @param key chiave da cercare
+     * @return valore in cache oppure null
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Inserisce un valore nella cache, rimuovendo se necessario l'elemento meno recente.
+     * @param key chiave
+     * @param value valore (non null)
+     */
+    public synchronized void put(K key, V value) {
+        if (maxSize > 0) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Svuota la cache. I contatori non vengono azzerati.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Restituisce una fotografia dei contatori della cache.
+     * @return statistiche correnti
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), maxSize);
+    }
+
+    /**
+     * Statistiche di utilizzo di una cache.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final int maxSize;
+
+        Stats(long hits, long misses, long evictions, int size, int maxSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Percentuale di richieste servite dalla cache.
+         * @return hit rate tra 0 e 1
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hit: %d, miss: %d, rimozioni: %d, elementi: %d/%d (hit rate %.1f%%)",
+                    hits, misses, evictions, size, maxSize, getHitRate() * 100);
+        }
+    }
+}
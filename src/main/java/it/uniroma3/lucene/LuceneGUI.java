@@ -18,6 +18,9 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,6 +36,7 @@ public class LuceneGUI extends JFrame {
     private JTextField searchField;
     private JTable resultsTable;
     private JLabel statusLabel;
+    private JProgressBar progressBar;
     
     // Modello della tabella
     private DefaultTableModel tableModel;
@@ -46,6 +50,27 @@ public class LuceneGUI extends JFrame {
     private List<String> presetQueries = new java.util.ArrayList<>();
     private JList<String> presetQueryList;
     
+    // Operazioni in background: ricerca e indicizzazione non vengono mai eseguite sull'EDT
+    private SwingWorker<Searcher.Page, Searcher.SearchResult> searchWorker;
+    private SwingWorker<Integer, Void> indexWorker;
+    private Timer validationTimer;
+    private SwingWorker<String, Void> validationWorker;
+    private IncrementalSearch incrementalSearch;
+    private SwingWorker<IncrementalSearch.Result, Void> instantWorker;
+    private JCheckBox instantSearchCheckBox;
+    private JComboBox<Integer> maxResultsComboBox;
+    private JButton moreResultsButton;
+    // Query mostrata nella tabella e cursore della sua pagina successiva
+    private String lastQuery;
+    private String nextCursor;
+    
+    /** Pausa nella digitazione dopo la quale la query viene validata. */
+    private static final int VALIDATION_DELAY_MILLIS = 250;
+    /** Pausa nella digitazione dopo la quale viene eseguita la ricerca istantanea. */
+    private static final int INSTANT_SEARCH_DELAY_MILLIS = 50;
+    /** Risultati mostrati dalla ricerca istantanea. */
+    private static final int INSTANT_SEARCH_RESULTS = 10;
+    
     // Logging
     private static final Logger logger = Logger.getLogger(LuceneGUI.class.getName());
     
@@ -83,6 +108,11 @@ public class LuceneGUI extends JFrame {
             
             logger.info("Applicazione avviata con successo");
             updateStatus(messages.getString("status.ready"));
+            
+            // Indicizzazione dei file nuovi o modificati, in background
+            if (hasDataFiles()) {
+                reindexFiles();
+            }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Errore durante l'avvio dell'applicazione", e);
             showError(messages.getString("error.startup"), e.getMessage());
@@ -156,11 +186,19 @@ public class LuceneGUI extends JFrame {
         // Inizializzazione di Indexer e Searcher
         indexer = new Indexer(indexPath);
         searcher = new Searcher(indexPath);
-        
-        // Indicizzazione dei file esistenti
-        if (Files.list(dataDir).count() > 0) {
-            int numIndexed = indexer.createIndex(dataPath);
-            logger.info("Indicizzati " + numIndexed + " file");
+        searcher.setQueryLog(QueryLog.getDefault());
+        incrementalSearch = new IncrementalSearch(searcher, INSTANT_SEARCH_RESULTS, IncrementalSearch.DEFAULT_BUDGET_MILLIS);
+    }
+    
+    /**
+     * Verifica se la directory dei dati contiene file da indicizzare
+     */
+    private boolean hasDataFiles() {
+        try (Stream<Path> files = Files.list(Paths.get(dataPath))) {
+            return files.findAny().isPresent();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Impossibile leggere la directory dei dati", e);
+            return false;
         }
     }
     
@@ -208,6 +246,10 @@ public class LuceneGUI extends JFrame {
         JMenuItem selectIndexDirItem = new JMenuItem(messages.getString("menu.file.selectIndexDir"));
         selectIndexDirItem.addActionListener(e -> selectIndexDirectory());
         
+        JMenuItem cancelItem = new JMenuItem(messages.getString("menu.file.cancel"));
+        cancelItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0));
+        cancelItem.addActionListener(e -> cancelOperations());
+        
         JMenuItem exitItem = new JMenuItem(messages.getString("menu.file.exit"));
         exitItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Q, ActionEvent.CTRL_MASK));
         exitItem.addActionListener(e -> {
@@ -216,6 +258,7 @@ public class LuceneGUI extends JFrame {
         });
         
         fileMenu.add(indexItem);
+        fileMenu.add(cancelItem);
         fileMenu.addSeparator();
         fileMenu.add(selectDataDirItem);
         fileMenu.add(selectIndexDirItem);
@@ -264,36 +307,30 @@ public class LuceneGUI extends JFrame {
         searchField = new JTextField();
         searchField.setToolTipText(messages.getString("search.tooltip"));
         
-        // Validazione in tempo reale
+        // Validazione in tempo reale: solo sintattica, quando l'utente smette di digitare,
+        // oppure ricerca istantanea se attivata
+        validationTimer = new Timer(VALIDATION_DELAY_MILLIS, e -> {
+            if (instantSearchCheckBox.isSelected()) {
+                instantSearch();
+            } else {
+                validateQuery();
+            }
+        });
+        validationTimer.setRepeats(false);
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             @Override
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
-                validateQuery();
+                validationTimer.restart();
             }
             
             @Override
             public void removeUpdate(javax.swing.event.DocumentEvent e) {
-                validateQuery();
+                validationTimer.restart();
             }
             
             @Override
             public void changedUpdate(javax.swing.event.DocumentEvent e) {
-                validateQuery();
-            }
-            
-            private void validateQuery() {
-                String query = searchField.getText().trim();
-                if (query.isEmpty()) {
-                    searchField.setBorder(BorderFactory.createLineBorder(Color.GRAY));
-                } else {
-                    try {
-                        // Tentiamo di eseguire una ricerca di prova per validare la query
-                        searcher.search(query, 1);
-                        searchField.setBorder(BorderFactory.createLineBorder(Color.GREEN));
-                    } catch (Exception ex) {
-                        searchField.setBorder(BorderFactory.createLineBorder(Color.RED));
-                    }
-                }
+                validationTimer.restart();
             }
         });
         
@@ -349,12 +386,27 @@ public class LuceneGUI extends JFrame {
         });
         
         JLabel maxResultsLabel = new JLabel(messages.getString("search.option.maxResults"));
-        JComboBox<Integer> maxResultsComboBox = new JComboBox<>(
+        maxResultsComboBox = new JComboBox<>(
                 new Integer[] {5, 10, 20, 50, 100});
         maxResultsComboBox.setSelectedItem(10);
         
+        // Ricerca durante la digitazione, con l'ultima parola cercata come prefisso
+        instantSearchCheckBox = new JCheckBox(messages.getString("search.option.instant"));
+        instantSearchCheckBox.setToolTipText(messages.getString("search.option.instant.tooltip"));
+        instantSearchCheckBox.setBackground(new Color(60, 63, 65));
+        instantSearchCheckBox.setForeground(Color.WHITE);
+        instantSearchCheckBox.addActionListener(e -> {
+            boolean instant = instantSearchCheckBox.isSelected();
+            validationTimer.setInitialDelay(instant ? INSTANT_SEARCH_DELAY_MILLIS : VALIDATION_DELAY_MILLIS);
+            if (!instant) {
+                cancelInstantSearch();
+            }
+            validationTimer.restart();
+        });
+        
         optionsPanel.add(filenameCheckBox);
         optionsPanel.add(contentCheckBox);
+        optionsPanel.add(instantSearchCheckBox);
         optionsPanel.add(new JSeparator(JSeparator.VERTICAL));
         optionsPanel.add(maxResultsLabel);
         optionsPanel.add(maxResultsComboBox);
@@ -410,6 +462,14 @@ public class LuceneGUI extends JFrame {
         JScrollPane scrollPane = new JScrollPane(resultsTable);
         resultsPanel.add(scrollPane, BorderLayout.CENTER);
         
+        // Pagina successiva dei risultati, aggiunta in fondo alla tabella
+        moreResultsButton = new JButton(messages.getString("results.more"));
+        moreResultsButton.setEnabled(false);
+        moreResultsButton.addActionListener(e -> loadMoreResults());
+        JPanel pagingPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 5));
+        pagingPanel.add(moreResultsButton);
+        resultsPanel.add(pagingPanel, BorderLayout.SOUTH);
+        
         return resultsPanel;
     }
     
@@ -426,6 +486,12 @@ public class LuceneGUI extends JFrame {
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         rightPanel.setOpaque(false);
         
+        // Il numero di file da indicizzare non è noto in anticipo: barra indeterminata
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+        rightPanel.add(progressBar);
+        
         statusBar.add(statusLabel, BorderLayout.CENTER);
         statusBar.add(rightPanel, BorderLayout.EAST);
         
@@ -512,68 +578,307 @@ public class LuceneGUI extends JFrame {
     }
     
     /**
-     * Esegue la ricerca
+     * Verifica in background la sintassi della query, senza eseguirla, e colora il
+     * bordo del campo di ricerca. Una validazione non ancora conclusa viene scartata
+     * se nel frattempo la query è cambiata.
      */
-    private void performSearch() {
+    private void validateQuery() {
         String query = searchField.getText().trim();
+        if (validationWorker != null) {
+            validationWorker.cancel(false);
+        }
         if (query.isEmpty()) {
-            updateStatus(messages.getString("status.emptyQuery"));
+            validationWorker = null;
+            searchField.setBorder(BorderFactory.createLineBorder(Color.GRAY));
+            searchField.setToolTipText(messages.getString("search.tooltip"));
             return;
         }
         
-        try {
-            logger.info("Esecuzione query: " + query);
-            updateStatus(messages.getString("status.searching"));
-            
-            // Pulisci la tabella
-            while (tableModel.getRowCount() > 0) {
-                tableModel.removeRow(0);
+        validationWorker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                try {
+                    searcher.validateQuery(query);
+                    return null;
+                } catch (ParseException e) {
+                    return e.getMessage();
+                }
             }
             
-            // Esegui la ricerca
-            List<Searcher.SearchResult> results = searcher.search(query, 10);
+            @Override
+            protected void done() {
+                if (isCancelled() || validationWorker != this) {
+                    return;
+                }
+                try {
+                    String error = get();
+                    searchField.setBorder(BorderFactory.createLineBorder(error == null ? Color.GREEN : Color.RED));
+                    searchField.setToolTipText(error == null ? messages.getString("search.tooltip") : error);
+                } catch (ExecutionException e) {
+                    logger.log(Level.WARNING, "Errore durante la validazione della query", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        validationWorker.execute();
+    }
+    
+    /**
+     * Esegue in background la ricerca istantanea del testo digitato. La ricerca
+     * precedente ancora in corso viene interrotta; se la ricerca supera il budget
+     * di tempo si invita a premere Invio per la ricerca completa.
+     */
+    private void instantSearch() {
+        String text = searchField.getText().trim();
+        cancelInstantSearch();
+        if (text.isEmpty()) {
+            searchField.setBorder(BorderFactory.createLineBorder(Color.GRAY));
+            searchField.setToolTipText(messages.getString("search.tooltip"));
+            tableModel.setRowCount(0);
+            updateStatus(messages.getString("status.ready"));
+            return;
+        }
+        
+        instantWorker = new SwingWorker<IncrementalSearch.Result, Void>() {
+            @Override
+            protected IncrementalSearch.Result doInBackground() throws Exception {
+                return incrementalSearch.search(text);
+            }
             
-            // Aggiungi i risultati alla tabella
-            for (Searcher.SearchResult result : results) {
-                tableModel.addRow(new Object[] {
-                        result.getFilename(),
-                        String.format("%.4f", result.getScore()),
-                        result.getSnippet()
-                });
+            @Override
+            protected void done() {
+                if (isCancelled() || instantWorker != this) {
+                    return;
+                }
+                try {
+                    IncrementalSearch.Result result = get();
+                    searchField.setBorder(BorderFactory.createLineBorder(Color.GREEN));
+                    searchField.setToolTipText(messages.getString("search.tooltip"));
+                    if (!result.isComplete()) {
+                        updateStatus(messages.getString("status.instantTooSlow"));
+                        return;
+                    }
+                    tableModel.setRowCount(0);
+                    lastQuery = null;
+                    nextCursor = null;
+                    moreResultsButton.setEnabled(false);
+                    for (Searcher.SearchResult searchResult : result.getResults()) {
+                        addResultRow(searchResult);
+                    }
+                    updateStatus(String.format(messages.getString("status.instantResults"),
+                            result.getResults().size(), result.getElapsedNanos() / 1_000_000));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof ParseException) {
+                        searchField.setBorder(BorderFactory.createLineBorder(Color.RED));
+                        searchField.setToolTipText(cause.getMessage());
+                    } else if (!(cause instanceof CancellationException)) {
+                        logger.log(Level.WARNING, "Errore durante la ricerca istantanea", cause);
+                        updateStatus(messages.getString("status.searchError") + ": " + cause.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        instantWorker.execute();
+    }
+    
+    /**
+     * Interrompe la ricerca istantanea in corso e ne scarta i risultati.
+     */
+    private void cancelInstantSearch() {
+        incrementalSearch.cancel();
+        if (instantWorker != null) {
+            instantWorker.cancel(false);
+            instantWorker = null;
+        }
+    }
+    
+    /**
+     * Aggiunge un risultato alla tabella
+     */
+    private void addResultRow(Searcher.SearchResult result) {
+        tableModel.addRow(new Object[] {
+                result.getFilename(),
+                String.format("%.4f", result.getScore()),
+                formatSnippet(result)
+        });
+    }
+    
+    /**
+     * Esegue la ricerca in background, mostrando la prima pagina di risultati.
+     * Una nuova ricerca sostituisce quella ancora in corso, i cui risultati vengono scartati.
+     */
+    private void performSearch() {
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            updateStatus(messages.getString("status.emptyQuery"));
+            return;
+        }
+        
+        // La ricerca completa sostituisce anche quella istantanea
+        validationTimer.stop();
+        cancelInstantSearch();
+        
+        // Pulisci la tabella
+        tableModel.setRowCount(0);
+        runSearch(query, null);
+    }
+    
+    /**
+     * Aggiunge alla tabella la pagina successiva dei risultati dell'ultima ricerca.
+     */
+    private void loadMoreResults() {
+        if (lastQuery == null || nextCursor == null) {
+            return;
+        }
+        runSearch(lastQuery, nextCursor);
+    }
+    
+    /**
+     * Esegue in background la ricerca di una pagina di risultati e la aggiunge alla tabella.
+     * @param cursor cursore della pagina, oppure null per la prima
+     */
+    private void runSearch(String query, String cursor) {
+        if (searchWorker != null) {
+            // Senza interrompere il thread: l'interruzione chiuderebbe i canali dell'indice.
+            // La ricerca si ferma comunque, tramite il QueryTimeout legato al worker
+            searchWorker.cancel(false);
+        }
+        
+        logger.info("Esecuzione query: " + query + (cursor != null ? " (pagina successiva)" : ""));
+        updateStatus(messages.getString("status.searching"));
+        lastQuery = query;
+        nextCursor = null;
+        moreResultsButton.setEnabled(false);
+        int pageSize = (Integer) maxResultsComboBox.getSelectedItem();
+        
+        searchWorker = new SwingWorker<Searcher.Page, Searcher.SearchResult>() {
+            @Override
+            protected Searcher.Page doInBackground() throws Exception {
+                // Ogni risultato viene mostrato appena il suo snippet è pronto
+                return searcher.searchPage(query, pageSize, cursor, this::isCancelled, this::publish);
             }
             
-            updateStatus(String.format(messages.getString("status.resultsFound"), results.size()));
+            @Override
+            protected void process(List<Searcher.SearchResult> chunk) {
+                if (isCancelled()) {
+                    return;
+                }
+                // Aggiungi i risultati alla tabella man mano che arrivano
+                for (Searcher.SearchResult result : chunk) {
+                    addResultRow(result);
+                }
+            }
             
-            // Mostra un messaggio se non ci sono risultati
-            if (results.isEmpty()) {
-                JOptionPane.showMessageDialog(this, 
-                    "Nessun risultato trovato per la query: \"" + query + "\"\n\n" +
-                    "Suggerimenti:\n" +
-                    "- Controlla eventuali errori di battitura\n" +
-                    "- Prova termini più generici\n" +
-                    "- Usa prefissi 'nome:' o 'contenuto:' per cercare in campi specifici", 
-                    "Nessun risultato", JOptionPane.INFORMATION_MESSAGE);
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    Searcher.Page page = get();
+                    nextCursor = page.getNextCursor();
+                    moreResultsButton.setEnabled(page.hasNext());
+                    updateStatus(String.format(messages.getString("status.resultsFound"), tableModel.getRowCount()));
+                    
+                    // Mostra un messaggio se non ci sono risultati
+                    if (cursor == null && page.getResults().isEmpty()) {
+                        JOptionPane.showMessageDialog(LuceneGUI.this, 
+                            "Nessun risultato trovato per la query: \"" + query + "\"\n\n" +
+                            "Suggerimenti:\n" +
+                            "- Controlla eventuali errori di battitura\n" +
+                            "- Prova termini più generici\n" +
+                            "- Usa prefissi 'nome:' o 'contenuto:' per cercare in campi specifici", 
+                            "Nessun risultato", JOptionPane.INFORMATION_MESSAGE);
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    logger.log(Level.WARNING, "Errore durante la ricerca", cause);
+                    updateStatus(messages.getString("status.searchError") + ": " + cause.getMessage());
+                    showError(messages.getString("error.search"), cause.getMessage() + "\n\nDettagli: " + cause.toString());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Errore durante la ricerca", e);
-            updateStatus(messages.getString("status.searchError") + ": " + e.getMessage());
-            showError(messages.getString("error.search"), e.getMessage() + "\n\nDettagli: " + e.toString());
-        }
+        };
+        searchWorker.execute();
     }
     
     /**
-     * Reindicizza i file
+     * Reindicizza in background i file nuovi o modificati, mostrando nella barra
+     * di stato il numero di file elaborati
      */
     private void reindexFiles() {
-        try {
-            updateStatus(messages.getString("status.indexing"));
-            int numIndexed = indexer.createIndex(dataPath);
-            updateStatus(String.format(messages.getString("status.indexed"), numIndexed));
-            logger.info("Indicizzati " + numIndexed + " file");
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Errore durante l'indicizzazione", e);
-            updateStatus(messages.getString("status.indexError") + ": " + e.getMessage());
-            showError(messages.getString("error.index"), e.getMessage());
+        if (indexWorker != null && !indexWorker.isDone()) {
+            updateStatus(messages.getString("status.indexingBusy"));
+            return;
+        }
+        
+        updateStatus(messages.getString("status.indexing"));
+        progressBar.setVisible(true);
+        
+        // Le metriche dell'Indexer sono cumulative: l'avanzamento parte dai valori attuali
+        IndexingMetrics metrics = indexer.getMetrics();
+        long processedBefore = processedFiles(metrics);
+        Timer progressTimer = new Timer(200, e -> updateStatus(String.format(
+                messages.getString("status.indexingProgress"), processedFiles(metrics) - processedBefore)));
+        progressTimer.start();
+        
+        // Da qui in poi un annullamento vale per questa indicizzazione, anche prima che parta
+        indexer.resetCancel();
+        indexWorker = new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws IOException {
+                int numIndexed = indexer.updateIndex(dataPath);
+                searcher.refresh();
+                return numIndexed;
+            }
+            
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                progressBar.setVisible(false);
+                try {
+                    int numIndexed = get();
+                    if (indexer.isCancelled()) {
+                        updateStatus(String.format(messages.getString("status.indexingCancelled"), numIndexed));
+                        logger.info("Indicizzazione annullata dopo " + numIndexed + " file");
+                    } else {
+                        updateStatus(String.format(messages.getString("status.indexed"), numIndexed));
+                        logger.info("Indicizzati " + numIndexed + " file");
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    logger.log(Level.SEVERE, "Errore durante l'indicizzazione", cause);
+                    updateStatus(messages.getString("status.indexError") + ": " + cause.getMessage());
+                    showError(messages.getString("error.index"), cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        indexWorker.execute();
+    }
+    
+    private static long processedFiles(IndexingMetrics metrics) {
+        return (long) metrics.getTotalFiles() + metrics.getSkippedFiles();
+    }
+    
+    /**
+     * Annulla l'indicizzazione e la ricerca in corso. L'indicizzazione si ferma
+     * dopo il file corrente e conserva quelli già indicizzati.
+     */
+    private void cancelOperations() {
+        if (indexWorker != null && !indexWorker.isDone()) {
+            indexer.cancel();
+        }
+        cancelInstantSearch();
+        if (searchWorker != null && !searchWorker.isDone()) {
+            searchWorker.cancel(false);
+            updateStatus(messages.getString("status.ready"));
         }
     }
     
@@ -609,8 +914,7 @@ public class LuceneGUI extends JFrame {
             File selectedFile = fileChooser.getSelectedFile();
             indexPath = selectedFile.getAbsolutePath();
             try {
-                searcher.close();
-                searcher = new Searcher(indexPath);
+                searcher.switchIndex(indexPath);
                 updateStatus(String.format(messages.getString("status.indexPathChanged"), indexPath));
                 logger.info("Directory dell'indice cambiata: " + indexPath);
             } catch (IOException e) {
@@ -727,6 +1031,46 @@ public class LuceneGUI extends JFrame {
         }
     }
     
+    /**
+     * Converte lo snippet di un risultato in HTML, evidenziando in grassetto
+     * i termini della query
+     */
+    private static String formatSnippet(Searcher.SearchResult result) {
+        String snippet = result.getSnippet();
+        if (snippet == null) {
+            return "";
+        }
+        
+        StringBuilder html = new StringBuilder("<html>");
+        int last = 0;
+        for (Searcher.Highlight highlight : result.getHighlights()) {
+            appendEscaped(html, snippet, last, highlight.getStart());
+            html.append("<b>");
+            appendEscaped(html, snippet, highlight.getStart(), highlight.getEnd());
+            html.append("</b>");
+            last = highlight.getEnd();
+        }
+        appendEscaped(html, snippet, last, snippet.length());
+        return html.append("</html>").toString();
+    }
+    
+    /**
+     * Aggiunge all'HTML una porzione di testo, con i caratteri speciali escapati
+     * e gli a capo sostituiti da spazi
+     */
+    private static void appendEscaped(StringBuilder html, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': html.append("&lt;"); break;
+                case '>': html.append("&gt;"); break;
+                case '&': html.append("&amp;"); break;
+                case '\n': html.append(' '); break;
+                default: html.append(c);
+            }
+        }
+    }
+    
     /**
      * Mostra un messaggio di errore
      */
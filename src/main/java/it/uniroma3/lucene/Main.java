@@ -2,12 +2,14 @@ package it.uniroma3.lucene;
 
 import org.apache.lucene.queryparser.classic.ParseException;
 
+import java.awt.GraphicsEnvironment;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -17,70 +19,158 @@ public class Main {
     private static final String INDEX_DIR = "index";
     private static final String DATA_DIR = "data";
     private static final int MAX_RESULTS = 10;
+    /** Comando per mostrare la pagina successiva dei risultati dell'ultima query. */
+    private static final String NEXT_PAGE_COMMAND = "altri";
+    private static final String USAGE = "Utilizzo: java Main [--watch] [--metrics-port PORTA]";
 
     public static void main(String[] args) {
+        // Con --watch i file aggiunti o modificati in data/ diventano ricercabili senza reindicizzare
+        boolean watch = Arrays.asList(args).contains("--watch");
+        // Con --metrics-port le metriche sono esposte in formato Prometheus su /metrics
+        int metricsPort = parseMetricsPort(args);
+        
+        MetricsServer metricsServer = null;
         try {
             // Crea le directory se non esistono
             createDirectories();
 
-            // Indicizza i file
+            // Indicizza i file nuovi o modificati
             System.out.println("Indicizzazione dei file in corso...");
-            Indexer indexer = new Indexer(INDEX_DIR);
-            int numIndexed = indexer.createIndex(DATA_DIR);
+            Indexer indexer = new Indexer(INDEX_DIR, Runtime.getRuntime().availableProcessors());
+            if (metricsPort >= 0) {
+                metricsServer = new MetricsServer(metricsPort);
+                metricsServer.setIndexingMetrics(indexer.getMetrics());
+                System.out.println("Metriche disponibili sulla porta " + metricsServer.getPort() + MetricsServer.PATH);
+            }
+            int numIndexed = indexer.updateIndex(DATA_DIR);
             
-            // Visualizza il report delle metriche
-            MetricsReporter reporter = new MetricsReporter(indexer.getMetrics());
-            reporter.showGraphicalReport();
+            // Visualizza il report delle metriche (senza display viene solo stampato il riepilogo)
+            if (!GraphicsEnvironment.isHeadless()) {
+                MetricsReporter reporter = new MetricsReporter(indexer.getMetrics());
+                reporter.showGraphicalReport();
+            }
             
             // Salva i report localmente
             String reportDir = "reports";
             indexer.getMetrics().saveJsonReport(reportDir + "/latest_report.json");
             indexer.getMetrics().saveCsvReport(reportDir + "/latest_report.csv");
             
-            indexer.close();
             System.out.println("Indicizzazione completata. " + numIndexed + " file indicizzati.");
 
             // Inizializza il searcher
-            Searcher searcher = new Searcher(INDEX_DIR);
+            IndexWatcher watcher = null;
+            Searcher searcher;
+            if (watch) {
+                watcher = new IndexWatcher(indexer, DATA_DIR);
+                searcher = new Searcher(watcher.getWriter(), Runtime.getRuntime().availableProcessors());
+                watcher.addListener(searcher::refresh);
+                watcher.start();
+                System.out.println("Osservazione della directory '" + DATA_DIR + "' attiva.");
+            } else {
+                indexer.close();
+                searcher = new Searcher(INDEX_DIR, Runtime.getRuntime().availableProcessors());
+            }
+            searcher.setQueryLog(QueryLog.getDefault());
+            if (metricsServer != null) {
+                metricsServer.setSearcher(searcher);
+            }
 
             // Interfaccia utente per la ricerca
             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            // Ultima query eseguita, per scorrere le pagine successive dei risultati
+            String lastQuery = null;
+            String nextCursor = null;
+            int shown = 0;
             while (true) {
                 System.out.println("\nInserisci una query di ricerca (o 'exit' per uscire):");
                 System.out.println("Puoi usare i prefissi 'nome:' e 'contenuto:' per specificare il campo di ricerca.");
                 System.out.println("Esempio: nome:documento contenuto:\"esempio di frase\"");
                 
                 String queryString = reader.readLine();
-                if ("exit".equalsIgnoreCase(queryString)) {
+                if (queryString == null || "exit".equalsIgnoreCase(queryString)) {
                     break;
                 }
 
                 try {
-                    // Esegui la ricerca
-                    List<Searcher.SearchResult> results = searcher.search(queryString, MAX_RESULTS);
+                    boolean nextPage = NEXT_PAGE_COMMAND.equalsIgnoreCase(queryString.trim()) && nextCursor != null;
+                    if (nextPage) {
+                        queryString = lastQuery;
+                    } else {
+                        nextCursor = null;
+                        shown = 0;
+                    }
+
+                    // Esegui la ricerca, dalla pagina successiva se richiesto
+                    Searcher.Page page = searcher.searchPage(queryString, MAX_RESULTS, nextCursor);
+                    List<Searcher.SearchResult> results = page.getResults();
+                    lastQuery = queryString;
+                    nextCursor = page.getNextCursor();
                     
                     // Mostra i risultati
                     System.out.println("\nRisultati della ricerca per: " + queryString);
                     if (results.isEmpty()) {
-                        System.out.println("Nessun risultato trovato.");
+                        System.out.println(nextPage ? "Nessun altro risultato." : "Nessun risultato trovato.");
                     } else {
                         for (int i = 0; i < results.size(); i++) {
-                            System.out.println("\nRisultato " + (i + 1) + ":");
+                            System.out.println("\nRisultato " + (shown + i + 1) + ":");
                             System.out.println(results.get(i));
                         }
+                        shown += results.size();
+                    }
+                    if (nextCursor != null) {
+                        System.out.println("\nDigita '" + NEXT_PAGE_COMMAND + "' per i risultati successivi.");
                     }
                 } catch (ParseException e) {
                     System.out.println("Errore nel parsing della query: " + e.getMessage());
                 }
             }
 
+            System.out.println("Cache dei risultati: " + searcher.getResultCacheStats());
+
             // Chiudi il searcher
             searcher.close();
+            if (watcher != null) {
+                watcher.close();
+                indexer.close();
+            }
             
         } catch (IOException e) {
             System.err.println("Errore di I/O: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+        }
+    }
+
+    /**
+     * Legge la porta indicata con --metrics-port; se manca o non è valida mostra
+     * l'utilizzo e termina.
+     * @return porta delle metriche, oppure -1 se l'opzione non è presente
+     */
+    private static int parseMetricsPort(String[] args) {
+        int index = Arrays.asList(args).indexOf("--metrics-port");
+        if (index < 0) {
+            return -1;
+        }
+        if (index + 1 >= args.length) {
+            System.err.println("Manca la porta dopo --metrics-port");
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        try {
+            int port = Integer.parseInt(args[index + 1]);
+            if (port >= 0 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException e) {
+            // Gestito sotto insieme alle porte fuori intervallo
         }
+        System.err.println("Porta non valida per --metrics-port: " + args[index + 1]);
+        System.err.println(USAGE);
+        System.exit(1);
+        return -1;
     }
 
     /**
@@ -67,11 +67,14 @@ public class MetricsReporter {
             rightStats.setLayout(new FlowLayout(FlowLayout.LEFT));
             rightStats.add(new JLabel("<html><b>Tempo totale:</b> " + metrics.getTotalIndexingTime() + " ms</html>"));
             rightStats.add(Box.createHorizontalStrut(20));
-            rightStats.add(new JLabel("<html><b>Tempo medio:</b> " + String.format("%.2f", metrics.getAverageFileProcessingTime()) + " ms</html>"));
+            LatencyHistogram fileTimes = metrics.getFileProcessingHistogram();
+            rightStats.add(new JLabel("<html><b>Tempo medio:</b> " + String.format("%.3f", metrics.getAverageFileProcessingTime()) + " ms</html>"));
             rightStats.add(Box.createHorizontalStrut(20));
-            rightStats.add(new JLabel("<html><b>Tempo min:</b> " + metrics.getMinFileProcessingTime() + " ms</html>"));
+            rightStats.add(new JLabel("<html><b>p50:</b> " + String.format("%.3f", fileTimes.getValueAtPercentile(50) / 1e6) + " ms</html>"));
             rightStats.add(Box.createHorizontalStrut(20));
-            rightStats.add(new JLabel("<html><b>Tempo max:</b> " + metrics.getMaxFileProcessingTime() + " ms</html>"));
+            rightStats.add(new JLabel("<html><b>p99:</b> " + String.format("%.3f", fileTimes.getValueAtPercentile(99) / 1e6) + " ms</html>"));
+            rightStats.add(Box.createHorizontalStrut(20));
+            rightStats.add(new JLabel("<html><b>Tempo max:</b> " + String.format("%.3f", fileTimes.getMaxNanos() / 1e6) + " ms</html>"));
             
             statsPanel.add(leftStats, BorderLayout.NORTH);
             statsPanel.add(rightStats, BorderLayout.SOUTH);
@@ -0,0 +1,243 @@
+package it.uniroma3.lucene;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Endpoint HTTP che espone le metriche di indicizzazione e di ricerca nel formato
+ * testuale di Prometheus, per monitorare il sistema anche senza interfaccia grafica.
+ * <p>
+ * Le metriche vengono lette a ogni richiesta da {@link IndexingMetrics} e dal
+ * {@link Searcher} impostati, che possono cambiare mentre il server è attivo.
+ * I contatori sono cumulativi; le frequenze ({@code lucene_indexing_docs_per_second},
+ * {@code lucene_search_qps}) sono calcolate tra una richiesta e la successiva.
+ */
+public class MetricsServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MetricsServer.class.getName());
+    /** Percorso dell'endpoint delle metriche. */
+    public static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /** Quantili esposti per le distribuzioni delle latenze. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile IndexingMetrics indexingMetrics;
+    private volatile Searcher searcher;
+
+    // Valori della richiesta precedente, per il calcolo delle frequenze; protetti dal lock dell'istanza
+    private long lastScrapeNanos = System.nanoTime();
+    private long lastIndexedFiles;
+    private long lastSearchCount;
+
+    /**
+     * Avvia il server su tutte le interfacce.
+     * @param port porta su cui ascoltare (0 per una porta libera qualsiasi)
+     * @throws IOException se la porta non è disponibile
+     */
+    public MetricsServer(int port) throws IOException {
+        this(new InetSocketAddress(port));
+    }
+
+    /**
+     * Avvia il server sull'indirizzo indicato.
+     * @param address indirizzo su cui ascoltare
+     * @throws IOException se l'indirizzo non è disponibile
+     */
+    public MetricsServer(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Imposta le metriche di indicizzazione da esporre.
+     * @param indexingMetrics metriche dell'Indexer, oppure null
+     */
+    public void setIndexingMetrics(IndexingMetrics indexingMetrics) {
+        this.indexingMetrics = indexingMetrics;
+    }
+
+    /**
+     * Imposta il Searcher di cui esporre le statistiche di ricerca e delle cache.
+     * @param searcher Searcher in uso, oppure null
+     */
+    public void setSearcher(Searcher searcher) {
+        this.searcher = searcher;
+    }
+
+    /**
+     * Porta su cui il server è in ascolto.
+     * @return porta effettiva, utile se il server è stato avviato con la porta 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Errore nella generazione delle metriche", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Genera il testo delle metriche nel formato di esposizione di Prometheus.
+     * @return metriche correnti
+     */
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(1e-9, (now - lastScrapeNanos) / 1e9);
+        lastScrapeNanos = now;
+
+        IndexingMetrics metrics = indexingMetrics;
+        if (metrics != null) {
+            appendIndexing(out, metrics, elapsedSeconds);
+        }
+        Searcher current = searcher;
+        if (current != null) {
+            appendSearch(out, current, elapsedSeconds);
+        }
+        return out.toString();
+    }
+
+    private void appendIndexing(StringBuilder out, IndexingMetrics metrics, double elapsedSeconds) {
+        header(out, "lucene_indexing_in_progress", "gauge", "1 se è in corso un'indicizzazione");
+        sample(out, "lucene_indexing_in_progress", null, metrics.isIndexingInProgress() ? 1 : 0);
+
+        header(out, "lucene_indexing_files_total", "counter", "File elaborati dall'indicizzazione, per esito");
+        sample(out, "lucene_indexing_files_total", "outcome=\"indexed\"", metrics.getSuccessfulFiles());
+        sample(out, "lucene_indexing_files_total", "outcome=\"failed\"", metrics.getFailedFiles());
+        sample(out, "lucene_indexing_files_total", "outcome=\"skipped\"", metrics.getSkippedFiles());
+        sample(out, "lucene_indexing_files_total", "outcome=\"deleted\"", metrics.getDeletedFiles());
+
+        header(out, "lucene_indexing_duration_seconds", "gauge", "Durata dell'ultima indicizzazione, o di quella in corso");
+        sample(out, "lucene_indexing_duration_seconds", null, metrics.getTotalIndexingTime() / 1e3);
+
+        long indexed = metrics.getSuccessfulFiles();
+        header(out, "lucene_indexing_docs_per_second", "gauge", "Documenti indicizzati al secondo dalla lettura precedente");
+        sample(out, "lucene_indexing_docs_per_second", null, Math.max(0, indexed - lastIndexedFiles) / elapsedSeconds);
+        lastIndexedFiles = indexed;
+
+        header(out, "lucene_indexing_file_seconds", "summary", "Tempo di elaborazione dei file indicizzati");
+        summary(out, "lucene_indexing_file_seconds", null, metrics.getFileProcessingHistogram());
+
+        header(out, "lucene_indexing_phase_seconds", "summary", "Tempo delle fasi di indicizzazione");
+        for (IndexingMetrics.Phase phase : IndexingMetrics.Phase.values()) {
+            summary(out, "lucene_indexing_phase_seconds", "phase=\"" + phase.getReportName() + "\"",
+                    metrics.getPhaseHistogram(phase));
+        }
+    }
+
+    private void appendSearch(StringBuilder out, Searcher searcher, double elapsedSeconds) {
+        long searches = searcher.getSearchCount();
+        header(out, "lucene_search_queries_total", "counter", "Ricerche eseguite, comprese quelle servite dalla cache");
+        sample(out, "lucene_search_queries_total", null, searches);
+
+        header(out, "lucene_search_errors_total", "counter", "Ricerche terminate con un errore");
+        sample(out, "lucene_search_errors_total", null, searcher.getSearchErrorCount());
+
+        header(out, "lucene_search_qps", "gauge", "Ricerche al secondo dalla lettura precedente");
+        sample(out, "lucene_search_qps", null, Math.max(0, searches - lastSearchCount) / elapsedSeconds);
+        lastSearchCount = searches;
+
+        header(out, "lucene_search_latency_seconds", "summary", "Latenza delle ricerche");
+        summary(out, "lucene_search_latency_seconds", null, searcher.getSearchLatencyHistogram());
+
+        LruCache.Stats results = searcher.getResultCacheStats();
+        LruCache.Stats queries = searcher.getQueryCacheStats();
+        header(out, "lucene_cache_hits_total", "counter", "Richieste servite dalla cache");
+        sample(out, "lucene_cache_hits_total", "cache=\"results\"", results.getHits());
+        sample(out, "lucene_cache_hits_total", "cache=\"queries\"", queries.getHits());
+        header(out, "lucene_cache_misses_total", "counter", "Richieste non trovate in cache");
+        sample(out, "lucene_cache_misses_total", "cache=\"results\"", results.getMisses());
+        sample(out, "lucene_cache_misses_total", "cache=\"queries\"", queries.getMisses());
+        header(out, "lucene_cache_hit_ratio", "gauge", "Frazione di richieste servite dalla cache");
+        sample(out, "lucene_cache_hit_ratio", "cache=\"results\"", results.getHitRate());
+        sample(out, "lucene_cache_hit_ratio", "cache=\"queries\"", queries.getHitRate());
+        header(out, "lucene_cache_entries", "gauge", "Voci presenti in cache");
+        sample(out, "lucene_cache_entries", "cache=\"results\"", results.getSize());
+        sample(out, "lucene_cache_entries", "cache=\"queries\"", queries.getSize());
+
+        header(out, "lucene_reader_generation", "gauge", "Reader dell'indice aperti dopo il primo");
+        sample(out, "lucene_reader_generation", null, searcher.getReaderGeneration());
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Aggiunge i quantili, la somma e il numero di campioni di un istogramma, in secondi.
+     */
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            sample(out, name, prefix + "quantile=\"" + quantile + "\"",
+                    histogram.getValueAtPercentile(quantile * 100) / 1e9);
+        }
+        long count = histogram.getCount();
+        sample(out, name + "_sum", labels, histogram.getMeanNanos() * count / 1e9);
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9g", value));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Arresta il server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
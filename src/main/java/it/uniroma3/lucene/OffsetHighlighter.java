@@ -0,0 +1,360 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Generatore di snippet basato sugli offset memorizzati nell'indice.
+ * Le occorrenze dei termini della query vengono lette dalle postings del campo
+ * (indicizzato con {@link IndexOptions#DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS}),
+ * quindi il contenuto del documento non viene mai scandito né convertito in minuscolo:
+ * il costo per risultato dipende dal numero di occorrenze lette, non dalla dimensione del file.
+ * <p>
+ * Prefissi, wildcard e fuzzy vengono espansi solo nei termini presenti nel documento
+ * evidenziato, intersecando l'automa della query con il dizionario del segmento.
+ * <p>
+ * Un'istanza è legata a una query e a un reader ed è usata da un solo thread.
+ */
+final class OffsetHighlighter {
+    /** Numero massimo di termini in cui viene espanso un prefisso o una wildcard, per documento. */
+    private static final int MAX_EXPANDED_TERMS = 50;
+    /** Numero massimo di occorrenze lette per ciascun termine in un documento. */
+    private static final int MAX_OFFSETS_PER_TERM = 256;
+    /** Caratteri di contesto mostrati prima della prima occorrenza del passaggio. */
+    private static final int CONTEXT_BEFORE = 50;
+    /** Distanza massima entro cui cercare uno spazio per non tagliare le parole. */
+    private static final int WORD_BOUNDARY_LOOKUP = 20;
+    private static final String ELLIPSIS = "...";
+
+    private final String field;
+    private final List<LeafReaderContext> leaves;
+    private final Set<BytesRef> terms = new LinkedHashSet<>();
+    /** Automi dei prefissi e delle wildcard da intersecare con il dizionario dei termini. */
+    private final List<CompiledAutomaton> automata = new ArrayList<>();
+    /** Automi di query non intersecabili, verificati termine per termine. */
+    private final List<Supplier<ByteRunAutomaton>> runAutomata = new ArrayList<>();
+    private PostingsEnum postings;
+
+    /**
+     * Costruttore dell'highlighter.
+     * @param query query eseguita (già analizzata)
+     * @param reader reader su cui è stata eseguita la query
+     * @param field campo da cui estrarre gli snippet
+     */
+    OffsetHighlighter(Query query, IndexReader reader, String field) {
+        this.field = field;
+        this.leaves = reader.leaves();
+        query.visit(new TermCollector());
+    }
+
+    /**
+     * Raccoglie i termini della query sul campo, ignorando le clausole MUST_NOT.
+     */
+    private final class TermCollector extends QueryVisitor {
+        @Override
+        public boolean acceptField(String fieldName) {
+            return field.equals(fieldName);
+        }
+
+        @Override
+        public void consumeTerms(Query query, Term... queryTerms) {
+            for (Term term : queryTerms) {
+                if (field.equals(term.field())) {
+                    terms.add(term.bytes());
+                }
+            }
+        }
+
+        @Override
+        public void consumeTermsMatching(Query query, String fieldName, Supplier<ByteRunAutomaton> automaton) {
+            if (!field.equals(fieldName)) {
+                return;
+            }
+            if (query instanceof AutomatonQuery) {
+                AutomatonQuery automatonQuery = (AutomatonQuery) query;
+                automata.add(new CompiledAutomaton(automatonQuery.getAutomaton(), null, true,
+                        Operations.DEFAULT_DETERMINIZE_WORK_LIMIT, automatonQuery.isAutomatonBinary()));
+            } else if (query instanceof FuzzyQuery) {
+                automata.add(((FuzzyQuery) query).getAutomata());
+            } else {
+                runAutomata.add(automaton);
+            }
+        }
+
+        @Override
+        public QueryVisitor getSubVisitor(BooleanClause.Occur occur, Query parent) {
+            return occur == BooleanClause.Occur.MUST_NOT ? QueryVisitor.EMPTY_VISITOR : this;
+        }
+    }
+
+    /**
+     * Snippet con le posizioni delle occorrenze evidenziate.
+     */
+    static final class Snippet {
+        private final String text;
+        private final List<Searcher.Highlight> highlights;
+
+        Snippet(String text, List<Searcher.Highlight> highlights) {
+            this.text = text;
+            this.highlights = highlights;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        List<Searcher.Highlight> getHighlights() {
+            return highlights;
+        }
+    }
+
+    /**
+     * Occorrenza di un termine nel contenuto.
+     */
+    private static final class Match {
+        final int start;
+        final int end;
+        final int term;
+
+        Match(int start, int end, int term) {
+            this.start = start;
+            this.end = end;
+            this.term = term;
+        }
+    }
+
+    /**
+     * Genera lo snippet di un documento scegliendo il passaggio di lunghezza
+     * maxLength che contiene più termini distinti della query (a parità, più occorrenze).
+     * @param docId identificativo globale del documento
+     * @param content contenuto memorizzato del documento
+     * @param maxLength lunghezza indicativa dello snippet
+     * @return snippet evidenziato, oppure null se il segmento non contiene gli offset
+     * @throws IOException in caso di errori di I/O
+     */
+    Snippet highlight(int docId, CharSequence content, int maxLength) throws IOException {
+        LeafReaderContext context = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        LeafReader leafReader = context.reader();
+        FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null
+                || fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) < 0) {
+            return null;
+        }
+        if (content == null || content.length() == 0) {
+            return new Snippet("", Collections.emptyList());
+        }
+
+        List<Match> matches = new ArrayList<>();
+        int termCount = readMatches(leafReader, docId - context.docBase, content.length(), matches);
+        if (matches.isEmpty()) {
+            // Il documento corrisponde solo per il nome del file: mostra l'inizio del contenuto
+            return buildSnippet(content, 0, 0, maxLength, matches);
+        }
+
+        // Finestra scorrevole sulle occorrenze ordinate per posizione
+        int[] termCounts = new int[termCount];
+        int distinct = 0;
+        int bestScore = -1;
+        int bestFirst = 0;
+        int bestLast = 0;
+        int last = -1;
+        for (int first = 0; first < matches.size(); first++) {
+            int windowEnd = matches.get(first).start + maxLength;
+            while (last + 1 < matches.size() && matches.get(last + 1).end <= windowEnd) {
+                last++;
+                if (termCounts[matches.get(last).term]++ == 0) {
+                    distinct++;
+                }
+            }
+            if (last < first) {
+                // Occorrenza più lunga della finestra: la considera da sola
+                last = first;
+                if (termCounts[matches.get(first).term]++ == 0) {
+                    distinct++;
+                }
+            }
+            int score = distinct * MAX_OFFSETS_PER_TERM * termCount + (last - first + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                bestFirst = first;
+                bestLast = last;
+            }
+            if (--termCounts[matches.get(first).term] == 0) {
+                distinct--;
+            }
+        }
+
+        return buildSnippet(content, matches.get(bestFirst).start, matches.get(bestLast).end, maxLength, matches);
+    }
+
+    /**
+     * Legge dalle postings le occorrenze nel documento dei termini della query e delle
+     * espansioni di prefissi e wildcard, ordinate per posizione.
+     * @return numero di termini distinti a cui fanno riferimento le occorrenze
+     */
+    private int readMatches(LeafReader leafReader, int doc, int contentLength, List<Match> matches)
+            throws IOException {
+        Terms fieldTerms = leafReader.terms(field);
+        if (fieldTerms == null) {
+            return 0;
+        }
+
+        int termCount = 0;
+        TermsEnum termsEnum = fieldTerms.iterator();
+        for (BytesRef term : terms) {
+            if (termsEnum.seekExact(term)) {
+                readOccurrences(termsEnum, doc, termCount, contentLength, matches);
+            }
+            termCount++;
+        }
+
+        // Si espandono solo i termini presenti nel documento, senza limiti dovuti all'ordine alfabetico
+        Set<BytesRef> expanded = new HashSet<>();
+        for (CompiledAutomaton automaton : automata) {
+            termCount = expand(automaton.getTermsEnum(fieldTerms), null, doc, termCount, contentLength, expanded, matches);
+        }
+        for (Supplier<ByteRunAutomaton> supplier : runAutomata) {
+            termCount = expand(fieldTerms.iterator(), supplier.get(), doc, termCount, contentLength, expanded, matches);
+        }
+        matches.sort((a, b) -> a.start != b.start ? Integer.compare(a.start, b.start) : Integer.compare(a.end, b.end));
+        return termCount;
+    }
+
+    /**
+     * Aggiunge le occorrenze nel documento dei termini enumerati (filtrati dall'automa, se
+     * indicato) che non sono già termini della query, fino a {@link #MAX_EXPANDED_TERMS}.
+     * @return numero di termini distinti dopo l'espansione
+     */
+    private int expand(TermsEnum termsEnum, ByteRunAutomaton filter, int doc, int termCount, int contentLength,
+                       Set<BytesRef> expanded, List<Match> matches) throws IOException {
+        int found = 0;
+        BytesRef term;
+        while (found < MAX_EXPANDED_TERMS && (term = termsEnum.next()) != null) {
+            if (filter != null && !filter.run(term.bytes, term.offset, term.length)) {
+                continue;
+            }
+            if (terms.contains(term) || expanded.contains(term)) {
+                continue;
+            }
+            if (readOccurrences(termsEnum, doc, termCount, contentLength, matches)) {
+                expanded.add(BytesRef.deepCopyOf(term));
+                termCount++;
+                found++;
+            }
+        }
+        return termCount;
+    }
+
+    /**
+     * Aggiunge le occorrenze nel documento del termine corrente dell'enumerazione.
+     * @return true se il documento contiene il termine
+     */
+    private boolean readOccurrences(TermsEnum termsEnum, int doc, int term, int contentLength, List<Match> matches)
+            throws IOException {
+        postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+        if (postings.advance(doc) != doc) {
+            return false;
+        }
+        int freq = Math.min(postings.freq(), MAX_OFFSETS_PER_TERM);
+        for (int j = 0; j < freq; j++) {
+            postings.nextPosition();
+            int start = postings.startOffset();
+            int end = postings.endOffset();
+            if (start >= 0 && end <= contentLength && start < end) {
+                matches.add(new Match(start, end, term));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Costruisce lo snippet attorno al passaggio [passageStart, passageEnd),
+     * aggiungendo contesto e senza tagliare le parole.
+     */
+    private static Snippet buildSnippet(CharSequence content, int passageStart, int passageEnd, int maxLength,
+                                        List<Match> matches) {
+        int length = content.length();
+        int slack = Math.max(0, maxLength - (passageEnd - passageStart));
+        int start = Math.max(0, passageStart - Math.min(CONTEXT_BEFORE, slack));
+        int end = Math.min(length, Math.max(start + maxLength, passageEnd));
+
+        // Aggiusta per non tagliare a metà parola
+        if (start > 0) {
+            for (int i = start - 1; i >= Math.max(0, start - WORD_BOUNDARY_LOOKUP); i--) {
+                if (Character.isWhitespace(content.charAt(i))) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        if (end < length) {
+            for (int i = end; i < Math.min(length, end + WORD_BOUNDARY_LOOKUP); i++) {
+                if (Character.isWhitespace(content.charAt(i))) {
+                    end = i;
+                    break;
+                }
+            }
+        }
+
+        StringBuilder text = new StringBuilder(end - start + 2 * ELLIPSIS.length());
+        if (start > 0) {
+            text.append(ELLIPSIS);
+        }
+        int shift = text.length() - start;
+        text.append(content, start, end);
+        if (end < length) {
+            text.append(ELLIPSIS);
+        }
+
+        // Evidenziazioni relative allo snippet, unendo quelle sovrapposte
+        List<Searcher.Highlight> highlights = new ArrayList<>();
+        int currentStart = -1;
+        int currentEnd = -1;
+        for (Match match : matches) {
+            if (match.end <= start || match.start >= end) {
+                continue;
+            }
+            int matchStart = Math.max(match.start, start);
+            int matchEnd = Math.min(match.end, end);
+            if (currentEnd >= 0 && matchStart <= currentEnd) {
+                currentEnd = Math.max(currentEnd, matchEnd);
+            } else {
+                if (currentEnd >= 0) {
+                    highlights.add(new Searcher.Highlight(currentStart + shift, currentEnd + shift));
+                }
+                currentStart = matchStart;
+                currentEnd = matchEnd;
+            }
+        }
+        if (currentEnd >= 0) {
+            highlights.add(new Searcher.Highlight(currentStart + shift, currentEnd + shift));
+        }
+        return new Snippet(text.toString(), Collections.unmodifiableList(highlights));
+    }
+}
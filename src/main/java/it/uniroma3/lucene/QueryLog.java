@@ -0,0 +1,350 @@
+package it.uniroma3.lucene;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log asincrono delle query eseguite.
+ * <p>
+ * I thread delle query si limitano ad accodare una voce in una coda limitata e senza lock;
+ * un unico thread di scrittura formatta le voci a blocchi e le scrive su un canale
+ * aperto per tutta la durata del log, ruotando il file quando supera la dimensione massima.
+ * Ogni riga ha il formato {@code data | esito | query | dettaglio | latenza}, compatibile
+ * con {@link LoadGenerator#readQueryLog}.
+ */
+public class QueryLog implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(QueryLog.class.getName());
+    /** File del log predefinito, condiviso dai Searcher; non è versionato. */
+    public static final String DEFAULT_FILE = "logs/query_log.txt";
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long DEFAULT_MAX_FILE_BYTES = 10L * 1024 * 1024;
+    private static final int DEFAULT_MAX_ROTATED_FILES = 5;
+    /** Voci scritte al massimo con una singola scrittura sul canale. */
+    private static final int BATCH_SIZE = 512;
+    /** Attesa massima del thread di scrittura quando la coda è vuota. */
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    /** Attesa di un produttore bloccato prima di ricontrollare lo spazio nella coda. */
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private static QueryLog defaultLog;
+
+    /**
+     * Comportamento quando la coda è piena.
+     */
+    public enum OverflowPolicy {
+        /** La voce viene scartata e conteggiata: le query non rallentano mai. */
+        DROP,
+        /** Il thread della query attende che si liberi spazio: nessuna voce va persa. */
+        BLOCK
+    }
+
+    /**
+     * Esito di una query.
+     */
+    public enum Outcome {
+        OK, NO_RESULTS, ERROR
+    }
+
+    private final Path file;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxFileBytes;
+    private final int maxRotatedFiles;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    // Stato del thread di scrittura
+    private FileChannel channel;
+    private long fileSize;
+    private long reportedDropped;
+    private long lastTimestampSecond = Long.MIN_VALUE;
+    private String lastTimestamp;
+
+    /**
+     * Voce del log, creata dal thread della query e formattata dal thread di scrittura.
+     */
+    private static final class Entry {
+        final long timestampMillis = System.currentTimeMillis();
+        final String query;
+        final Outcome outcome;
+        final int hits;
+        final long latencyNanos;
+        final String error;
+
+        Entry(String query, Outcome outcome, int hits, long latencyNanos, String error) {
+            this.query = query;
+            this.outcome = outcome;
+            this.hits = hits;
+            this.latencyNanos = latencyNanos;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Costruttore del log con i parametri predefiniti: coda di {@value #DEFAULT_CAPACITY} voci
+     * che scarta le voci in eccesso e rotazione a 10 MB con 5 file precedenti.
+     * @param file file del log
+     */
+    public QueryLog(Path file) {
+        this(file, DEFAULT_CAPACITY, OverflowPolicy.DROP, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_ROTATED_FILES);
+    }
+
+    /**
+     * Costruttore del log.
+     * @param file file del log
+     * @param capacity numero massimo di voci in attesa di scrittura
+     * @param overflowPolicy comportamento con la coda piena
+     * @param maxFileBytes dimensione oltre la quale il file viene ruotato (0 per non ruotarlo mai)
+     * @param maxRotatedFiles numero di file precedenti conservati ({@code file.1} è il più recente)
+     */
+    public QueryLog(Path file, int capacity, OverflowPolicy overflowPolicy, long maxFileBytes, int maxRotatedFiles) {
+        if (capacity < 1 || maxFileBytes < 0 || maxRotatedFiles < 0) {
+            throw new IllegalArgumentException("Parametri del log delle query non validi");
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxFileBytes = maxFileBytes;
+        this.maxRotatedFiles = maxRotatedFiles;
+        this.writerThread = new Thread(this::writeLoop, "query-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Restituisce il log predefinito su {@value #DEFAULT_FILE}, condiviso dai Searcher
+     * delle applicazioni e chiuso all'uscita della JVM. Viene creato alla prima richiesta.
+     * @return log predefinito
+     */
+    public static synchronized QueryLog getDefault() {
+        if (defaultLog == null) {
+            QueryLog log = new QueryLog(Paths.get(DEFAULT_FILE));
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close, "query-log-shutdown"));
+            defaultLog = log;
+        }
+        return defaultLog;
+    }
+
+    /**
+     * Accoda l'esito di una query.
+     * @param query query eseguita
+     * @param outcome esito
+     * @param hits numero di risultati
+     * @param latencyNanos durata della ricerca in nanosecondi
+     * @param error messaggio di errore, se l'esito è {@link Outcome#ERROR}
+     * @return false se la voce è stata scartata
+     */
+    public boolean log(String query, Outcome outcome, int hits, long latencyNanos, String error) {
+        while (true) {
+            int current = size.get();
+            if (closed) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (current >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+                continue;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        queue.offer(new Entry(query, outcome, hits, latencyNanos, error));
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Attende che tutte le voci accodate finora siano state scritte.
+     */
+    public void flush() {
+        long target = enqueued.get();
+        while (processed.get() < target && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Numero di voci scartate perché la coda era piena o il log già chiuso.
+     * @return voci scartate
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Scrive le voci rimaste e chiude il file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder(BATCH_SIZE * 128);
+        while (true) {
+            // closed va letto prima di svuotare la coda, per non perdere le ultime voci
+            boolean closing = closed;
+            int count = 0;
+            Entry entry;
+            while (count < BATCH_SIZE && (entry = queue.poll()) != null) {
+                size.decrementAndGet();
+                format(entry, batch);
+                count++;
+            }
+
+            if (count > 0) {
+                write(batch);
+                batch.setLength(0);
+                processed.addAndGet(count);
+            } else if (closing) {
+                break;
+            } else {
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+            }
+            reportDropped();
+        }
+        closeChannel();
+    }
+
+    private void format(Entry entry, StringBuilder out) {
+        long second = entry.timestampMillis / 1000;
+        if (second != lastTimestampSecond) {
+            lastTimestampSecond = second;
+            lastTimestamp = TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(second));
+        }
+        out.append(lastTimestamp).append(" | ").append(entry.outcome).append(" | ");
+        appendSingleLine(out, entry.query);
+        out.append(" | ");
+        if (entry.outcome == Outcome.ERROR) {
+            appendSingleLine(out, entry.error);
+        } else {
+            out.append(entry.hits).append(" risultati");
+        }
+        out.append(" | ").append(String.format(Locale.ROOT, "%.3f ms", entry.latencyNanos / 1e6)).append('\n');
+    }
+
+    /**
+     * Aggiunge il testo sostituendo gli a capo, così ogni voce resta su una riga.
+     */
+    private static void appendSingleLine(StringBuilder out, String text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            out.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    private void write(CharSequence batch) {
+        try {
+            if (channel == null) {
+                openChannel();
+            }
+            // La rotazione avviene prima di scrivere, così il file corrente esiste sempre
+            if (maxFileBytes > 0 && fileSize >= maxFileBytes) {
+                rotate();
+                openChannel();
+            }
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(batch.toString());
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // Le voci del blocco vanno perse; il canale viene riaperto alla prossima scrittura
+            LOGGER.log(Level.SEVERE, "Impossibile scrivere nel file di log", e);
+            closeChannel();
+        }
+    }
+
+    /**
+     * Sposta il file corrente in {@code file.1}, scalando i precedenti ed eliminando il più vecchio.
+     */
+    private void rotate() throws IOException {
+        closeChannel();
+        if (maxRotatedFiles == 0) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Files.deleteIfExists(rotatedFile(maxRotatedFiles));
+        for (int i = maxRotatedFiles - 1; i >= 1; i--) {
+            if (Files.exists(rotatedFile(i))) {
+                Files.move(rotatedFile(i), rotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rotatedFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void openChannel() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Errore nella chiusura del file di log", e);
+            }
+            channel = null;
+        }
+    }
+
+    private void reportDropped() {
+        long total = dropped.get();
+        if (total > reportedDropped) {
+            LOGGER.warning("Log delle query saturo: " + (total - reportedDropped) + " voci scartate");
+            reportedDropped = total;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package it.uniroma3.lucene;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import org.apache.lucene.queryparser.classic.ParseException;
 
@@ -31,20 +32,28 @@ public class QueryTester {
         
         int successCount = 0;
         
-        for (String query : testQueries) {
-            try {
-                System.out.println("\nTest query: " + query);
-                List<Searcher.SearchResult> results = searcher.search(query, 10);
-                
-                System.out.println("Risultati trovati: " + results.size());
-                if (!results.isEmpty()) {
-                    System.out.println("Primo risultato: " + results.get(0).getFilename());
-                    successCount++;
-                } else {
-                    System.out.println("ATTENZIONE: Nessun risultato trovato");
-                }
-            } catch (Exception e) {
-                System.out.println("ERRORE durante l'esecuzione della query: " + e.getMessage());
+        // Le query vengono eseguite insieme, in parallelo, sulla stessa versione dell'indice
+        List<Searcher.BatchResult> batch;
+        try {
+            batch = searcher.searchBatch(Arrays.asList(testQueries), 10, Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            System.out.println("ERRORE durante l'esecuzione delle query: " + e.getMessage());
+            batch = List.of();
+        }
+        
+        for (Searcher.BatchResult result : batch) {
+            System.out.println("\nTest query: " + result.getQuery());
+            if (!result.isSuccessful()) {
+                System.out.println("ERRORE durante l'esecuzione della query: " + result.getError().getMessage());
+                continue;
+            }
+            List<Searcher.SearchResult> results = result.getResults();
+            System.out.printf("Risultati trovati: %d (%.2f ms)%n", results.size(), result.getElapsedNanos() / 1e6);
+            if (!results.isEmpty()) {
+                System.out.println("Primo risultato: " + results.get(0).getFilename());
+                successCount++;
+            } else {
+                System.out.println("ATTENZIONE: Nessun risultato trovato");
             }
         }
         
@@ -2,49 +2,163 @@ package it.uniroma3.lucene;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /**
  * Classe per la ricerca nei file indicizzati.
+ * Un'istanza può essere condivisa tra più thread: la configurazione è immutabile,
+ * gli IndexSearcher sono gestiti dal SearcherManager e i QueryParser, che non sono
+ * thread-safe, vengono presi in prestito da un pool per la durata del parsing.
+ * I risultati delle query vengono conservati in una cache LRU, svuotata ogni volta
+ * che il reader dell'indice cambia; le query analizzate hanno una propria cache,
+ * indipendente dall'indice. Se è impostato un {@link QueryLog}, l'esito di ogni
+ * query vi viene registrato in modo asincrono.
  */
 public class Searcher implements AutoCloseable {
     private static final Logger LOGGER = Logger.getLogger(Searcher.class.getName());
-    private static final String QUERY_LOG_FILE = "query_log.txt";
+    /** Boost dei campi: diamo un peso maggiore ai risultati che matchano il nome del file. */
+    private static final Map<String, Float> FIELD_BOOSTS = Map.of("filename", 1.5f, "content", 1.0f);
     
-    private final IndexSearcher searcher;
+    /** Intervallo tra due controlli periodici di modifiche all'indice. */
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+    /** Numero minimo di documenti per slice: sotto questa soglia la ricerca parallela non conviene. */
+    private static final int MIN_DOCS_PER_SLICE = 50_000;
+    /** Numero massimo di segmenti raggruppati in una slice. */
+    private static final int MAX_SEGMENTS_PER_SLICE = 5;
+    /** Slice in coda per ciascun thread di ricerca prima di eseguirle sul thread chiamante. */
+    private static final int SLICE_QUEUE_PER_THREAD = 4;
+    /** Numero massimo di query i cui risultati vengono mantenuti in cache. */
+    private static final int RESULT_CACHE_SIZE = 1000;
+    /** Numero massimo di query già analizzate mantenute in cache. */
+    private static final int QUERY_CACHE_SIZE = 1000;
+    /** Pattern per riconoscere i prefissi "nome:" e "contenuto:". */
+    private static final Pattern FIELD_PREFIX_PATTERN = Pattern.compile("(nome|contenuto):(\"[^\"]*\"|\\S+)");
+    /** Sequenze di spazi da ridurre a uno nella normalizzazione delle query. */
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    /** Lunghezza indicativa degli snippet mostrati nei risultati. */
+    private static final int SNIPPET_LENGTH = 150;
+    /** Versione del formato dei cursori di paginazione. */
+    private static final byte CURSOR_FORMAT = 1;
+    /** Byte di un cursore: versione, documento e punteggio dell'ultimo risultato. */
+    private static final int CURSOR_BYTES = 1 + Integer.BYTES + Float.BYTES;
+    
+    private volatile SearcherManager searcherManager;
+    private final SearcherFactory searcherFactory;
+    private final ThreadPoolExecutor searchExecutor;
+    private volatile boolean parallelSearchEnabled;
+    private volatile boolean resultCacheEnabled = true;
+    private volatile boolean queryCacheEnabled = true;
+    private volatile QueryLog queryLog;
+    private final ScheduledExecutorService refreshExecutor;
+    /** Pool dei batch di query: i thread vengono creati al primo batch e riusati dai successivi. */
+    private final ExecutorService batchExecutor;
     private final Analyzer filenameAnalyzer;
     private final Analyzer contentAnalyzer;
-    private final QueryParser filenameParser;
-    private final QueryParser contentParser;
-    private final MultiFieldQueryParser multiFieldParser;
+    private final Queue<QueryParsers> parserPool = new ConcurrentLinkedQueue<>();
+    /** Prima pagina dei risultati di ogni query, condivisa da {@link #search} e {@link #searchPage}. */
+    private final LruCache<ResultCacheKey, Page> resultCache = new LruCache<>(RESULT_CACHE_SIZE);
+    /** Le Query di Lucene sono immutabili e possono essere condivise tra i thread. */
+    private final LruCache<String, Query> queryCache = new LruCache<>(QUERY_CACHE_SIZE);
+    /** Statistiche delle ricerche, esposte da {@link MetricsServer}. */
+    private final LongAdder searchCount = new LongAdder();
+    private final LongAdder searchErrors = new LongAdder();
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    /** Numero di volte in cui è stato aperto un nuovo reader dell'indice. */
+    private final AtomicLong readerGeneration = new AtomicLong();
+    /** Archivi esterni dei contenuti aperti, per file; protetti dal lock della mappa. */
+    private final Map<Path, SharedContentStore> contentStores = new HashMap<>();
+    /** Archivi usati da ciascun reader aperto, per chiave del reader. */
+    private final Map<Object, Map<Integer, ContentStore>> readerContentStores = new ConcurrentHashMap<>();
+
+    /**
+     * Apertura del SearcherManager a partire dalla factory degli IndexSearcher.
+     */
+    @FunctionalInterface
+    private interface SearcherManagerOpener {
+        SearcherManager open(SearcherFactory searcherFactory) throws IOException;
+    }
+
+    /**
+     * Notifica dell'apertura di un nuovo reader da parte della factory degli IndexSearcher.
+     */
+    @FunctionalInterface
+    private interface ReaderListener {
+        void readerOpened(IndexReader reader) throws IOException;
+    }
+
+    /**
+     * Archivio esterno aperto in lettura, con il numero di reader che lo usano.
+     */
+    private static final class SharedContentStore {
+        private final ContentStore store;
+        private int references;
+
+        SharedContentStore(ContentStore store) {
+            this.store = store;
+        }
+    }
 
     /**
      * Costruttore del Searcher.
@@ -52,32 +166,466 @@ public class Searcher implements AutoCloseable {
      * @throws IOException in caso di errori di I/O
      */
     public Searcher(String indexDirectoryPath) throws IOException {
-        Path indexPath = Paths.get(indexDirectoryPath);
-        Directory indexDirectory = FSDirectory.open(indexPath);
-        IndexReader reader = DirectoryReader.open(indexDirectory);
-        this.searcher = new IndexSearcher(reader);
-        this.searcher.setSimilarity(new BM25Similarity());
+        this(indexDirectoryPath, 0);
+    }
+
+    /**
+     * Costruttore del Searcher con ricerca parallela sui segmenti dell'indice.
+     * Ogni query viene suddivisa in slice di segmenti eseguite da un pool limitato;
+     * quando il pool è saturo le slice vengono eseguite sul thread della query.
+     * @param indexDirectoryPath percorso della directory contenente l'indice
+     * @param searchThreads numero di thread del pool di ricerca (0 per la ricerca sequenziale)
+     * @throws IOException in caso di errori di I/O
+     */
+    public Searcher(String indexDirectoryPath, int searchThreads) throws IOException {
+        this(indexDirectoryPath, searchThreads, MIN_DOCS_PER_SLICE);
+    }
+
+    /**
+     * Costruttore con una soglia di documenti per slice diversa da quella predefinita,
+     * per suddividere in più slice anche indici piccoli.
+     * @param indexDirectoryPath percorso della directory contenente l'indice
+     * @param searchThreads numero di thread del pool di ricerca (0 per la ricerca sequenziale)
+     * @param minDocsPerSlice numero minimo di documenti per slice
+     * @throws IOException in caso di errori di I/O
+     */
+    Searcher(String indexDirectoryPath, int searchThreads, int minDocsPerSlice) throws IOException {
+        this(factory -> openSearcherManager(indexDirectoryPath, factory), searchThreads, minDocsPerSlice);
+    }
+
+    /**
+     * Costruttore del Searcher in modalità near-real-time: il reader viene aperto
+     * dall'IndexWriter e {@link #refresh()} rende visibili le modifiche non ancora
+     * committate. L'IndexWriter deve restare aperto finché il Searcher è in uso.
+     * @param writer IndexWriter dell'indice da interrogare
+     * @throws IOException in caso di errori di I/O
+     */
+    public Searcher(IndexWriter writer) throws IOException {
+        this(writer, 0);
+    }
+
+    /**
+     * Costruttore del Searcher near-real-time con ricerca parallela sui segmenti.
+     * @param writer IndexWriter dell'indice da interrogare
+     * @param searchThreads numero di thread del pool di ricerca (0 per la ricerca sequenziale)
+     * @throws IOException in caso di errori di I/O
+     */
+    public Searcher(IndexWriter writer, int searchThreads) throws IOException {
+        this(factory -> new SearcherManager(writer, factory), searchThreads, MIN_DOCS_PER_SLICE);
+    }
+
+    private Searcher(SearcherManagerOpener opener, int searchThreads, int minDocsPerSlice) throws IOException {
+        if (searchThreads < 0) {
+            throw new IllegalArgumentException("Il numero di thread di ricerca non può essere negativo: " + searchThreads);
+        }
+        if (minDocsPerSlice <= 0) {
+            throw new IllegalArgumentException("Il numero minimo di documenti per slice deve essere positivo: " + minDocsPerSlice);
+        }
+        this.searchExecutor = searchThreads > 0 ? newSearchExecutor(searchThreads) : null;
+        this.parallelSearchEnabled = searchExecutor != null;
+        this.searcherFactory = new Bm25SearcherFactory(searchExecutor, minDocsPerSlice, this::retainContentStore);
+        try {
+            this.searcherManager = withCacheInvalidation(opener.open(searcherFactory));
+        } catch (IOException | RuntimeException e) {
+            if (searchExecutor != null) {
+                searchExecutor.shutdownNow();
+            }
+            throw e;
+        }
         
         // Utilizza StandardAnalyzer sia per filename che per content per coerenza con l'indicizzazione
         this.filenameAnalyzer = new StandardAnalyzer();
         this.contentAnalyzer = new StandardAnalyzer();
         
-        this.filenameParser = new QueryParser("filename", filenameAnalyzer);
-        this.filenameParser.setAllowLeadingWildcard(true);
-        this.contentParser = new QueryParser("content", contentAnalyzer);
-        this.contentParser.setAllowLeadingWildcard(true);
+        // Controllo periodico delle modifiche all'indice, fuori dal percorso delle query
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "searcher-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refreshExecutor.scheduleWithFixedDelay(this::backgroundRefresh,
+                REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
         
-        Map<String, Float> boosts = new HashMap<>();
-        boosts.put("filename", 1.5f);  // Diamo un peso maggiore ai risultati che matchano il nome del file
-        boosts.put("content", 1.0f);
-        
-        // Utilizziamo l'analyzer per il contenuto come default
-        this.multiFieldParser = new MultiFieldQueryParser(
-                new String[] {"filename", "content"},
-                contentAnalyzer,
-                boosts
-        );
-        this.multiFieldParser.setAllowLeadingWildcard(true);
+        AtomicInteger batchThreadIds = new AtomicInteger();
+        this.batchExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "searcher-batch-" + batchThreadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Crea il pool limitato per la ricerca parallela sulle slice.
+     * Con la coda piena le slice vengono eseguite dal thread della query, così
+     * con molte query concorrenti la ricerca torna di fatto sequenziale.
+     */
+    private static ThreadPoolExecutor newSearchExecutor(int searchThreads) {
+        AtomicInteger threadIds = new AtomicInteger();
+        return new ThreadPoolExecutor(searchThreads, searchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(searchThreads * SLICE_QUEUE_PER_THREAD),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "searcher-slice-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Abilita o disabilita la ricerca parallela sui segmenti, ad esempio per
+     * privilegiare il throughput quando le query concorrenti sono molte.
+     * Non ha effetto se il Searcher è stato creato senza pool di ricerca.
+     * @param enabled true per suddividere ogni query tra i thread del pool
+     */
+    public void setParallelSearchEnabled(boolean enabled) {
+        this.parallelSearchEnabled = enabled && searchExecutor != null;
+    }
+
+    /**
+     * Indica se la ricerca parallela sui segmenti è attiva.
+     * @return true se le query vengono suddivise tra i thread del pool
+     */
+    public boolean isParallelSearchEnabled() {
+        return parallelSearchEnabled;
+    }
+
+    /**
+     * Insieme dei parser usati per una query. I QueryParser mantengono stato interno
+     * durante il parsing, quindi ogni insieme è usato da un solo thread alla volta.
+     */
+    private static final class QueryParsers {
+        private final QueryParser filenameParser;
+        private final QueryParser contentParser;
+        private final MultiFieldQueryParser multiFieldParser;
+
+        QueryParsers(Analyzer filenameAnalyzer, Analyzer contentAnalyzer) {
+            this.filenameParser = new QueryParser("filename", filenameAnalyzer);
+            this.filenameParser.setAllowLeadingWildcard(true);
+            this.contentParser = new QueryParser("content", contentAnalyzer);
+            this.contentParser.setAllowLeadingWildcard(true);
+            
+            // Utilizziamo l'analyzer per il contenuto come default
+            this.multiFieldParser = new MultiFieldQueryParser(
+                    new String[] {"filename", "content"},
+                    contentAnalyzer,
+                    FIELD_BOOSTS
+            );
+            this.multiFieldParser.setAllowLeadingWildcard(true);
+        }
+    }
+
+    /**
+     * Prende in prestito un insieme di parser dal pool, creandone uno nuovo se il pool è vuoto.
+     * Il pool cresce al più fino al numero di thread che eseguono il parsing contemporaneamente.
+     */
+    private QueryParsers borrowParsers() {
+        QueryParsers parsers = parserPool.poll();
+        return parsers != null ? parsers : new QueryParsers(filenameAnalyzer, contentAnalyzer);
+    }
+
+    /**
+     * Restituisce al pool un insieme di parser ottenuto con {@link #borrowParsers()}.
+     */
+    private void returnParsers(QueryParsers parsers) {
+        parserPool.offer(parsers);
+    }
+
+    /**
+     * Apre un SearcherManager sulla directory dell'indice.
+     */
+    private static SearcherManager openSearcherManager(String indexDirectoryPath, SearcherFactory searcherFactory)
+            throws IOException {
+        Path indexPath = Paths.get(indexDirectoryPath);
+        Directory indexDirectory = FSDirectory.open(indexPath);
+        return new SearcherManager(indexDirectory, searcherFactory);
+    }
+
+    /**
+     * Registra sul SearcherManager il listener che svuota la cache dei risultati
+     * ogni volta che il refresh apre un nuovo reader.
+     */
+    private SearcherManager withCacheInvalidation(SearcherManager manager) {
+        manager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) {
+                    resultCache.clear();
+                    readerGeneration.incrementAndGet();
+                }
+            }
+        });
+        return manager;
+    }
+
+    /**
+     * Factory che crea gli IndexSearcher con la similarità BM25 e, se disponibile,
+     * con il pool per la ricerca parallela.
+     */
+    private static class Bm25SearcherFactory extends SearcherFactory {
+        private final ThreadPoolExecutor executor;
+        private final int minDocsPerSlice;
+        private final ReaderListener readerListener;
+
+        Bm25SearcherFactory(ThreadPoolExecutor executor, int minDocsPerSlice, ReaderListener readerListener) {
+            this.executor = executor;
+            this.minDocsPerSlice = minDocsPerSlice;
+            this.readerListener = readerListener;
+        }
+
+        @Override
+        public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+            readerListener.readerOpened(reader);
+            IndexSearcher indexSearcher = executor == null
+                    ? new IndexSearcher(reader)
+                    : newParallelSearcher(reader, executor, minDocsPerSlice);
+            indexSearcher.setSimilarity(new BM25Similarity());
+            return indexSearcher;
+        }
+
+        /**
+         * Crea un IndexSearcher le cui slice sono bilanciate sul numero di thread del pool:
+         * ogni slice contiene circa maxDoc / thread documenti, ma mai meno di
+         * minDocsPerSlice, così gli indici piccoli restano in una sola slice.
+         */
+        private static IndexSearcher newParallelSearcher(IndexReader reader, ThreadPoolExecutor executor,
+                                                         int minDocsPerSlice) {
+            int threads = executor.getMaximumPoolSize();
+            int maxDocsPerSlice = Math.max(minDocsPerSlice, (reader.maxDoc() + threads - 1) / threads);
+            return new IndexSearcher(reader, executor) {
+                // Invocato dal costruttore di IndexSearcher: usa solo la variabile locale catturata
+                @Override
+                protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+                    return IndexSearcher.slices(leaves, maxDocsPerSlice, MAX_SEGMENTS_PER_SLICE);
+                }
+            };
+        }
+    }
+
+    /**
+     * Restituisce l'IndexSearcher da usare per una query: se la ricerca parallela è
+     * disattivata crea una vista sequenziale, senza pool, sullo stesso reader.
+     */
+    private IndexSearcher querySearcher(IndexSearcher indexSearcher) {
+        if (parallelSearchEnabled || indexSearcher.getExecutor() == null) {
+            return indexSearcher;
+        }
+        return sequentialSearcher(indexSearcher);
+    }
+
+    private static IndexSearcher sequentialSearcher(IndexSearcher indexSearcher) {
+        IndexSearcher sequential = new IndexSearcher(indexSearcher.getIndexReader());
+        sequential.setSimilarity(indexSearcher.getSimilarity());
+        return sequential;
+    }
+
+    /**
+     * Restituisce il numero di slice in cui viene suddivisa una query sul reader corrente.
+     * @return numero di slice, 1 per la ricerca sequenziale
+     * @throws IOException in caso di errori di I/O
+     */
+    int getSliceCount() throws IOException {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            return indexSearcher.getExecutor() == null ? 1 : indexSearcher.getSlices().length;
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    /**
+     * Riapre il reader se l'indice è cambiato, rendendo ricercabili i nuovi documenti.
+     * Le ricerche in corso continuano sul reader precedente, che viene chiuso
+     * quando l'ultima di esse termina.
+     * @throws IOException in caso di errori di I/O
+     */
+    public void refresh() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    /**
+     * Controllo periodico eseguito dal thread di refresh: se un altro refresh è
+     * già in corso non attende.
+     */
+    private void backgroundRefresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (AlreadyClosedException e) {
+            // Indice sostituito o Searcher chiuso durante il controllo
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Errore durante l'aggiornamento del reader", e);
+        }
+    }
+
+    /**
+     * Sostituisce l'indice interrogato senza ricreare il Searcher.
+     * Le ricerche in corso terminano sull'indice precedente, che viene chiuso
+     * quando l'ultima di esse rilascia il proprio searcher.
+     * @param indexDirectoryPath percorso della directory contenente il nuovo indice
+     * @throws IOException in caso di errori di I/O
+     */
+    public synchronized void switchIndex(String indexDirectoryPath) throws IOException {
+        SearcherManager previous = searcherManager;
+        searcherManager = withCacheInvalidation(openSearcherManager(indexDirectoryPath, searcherFactory));
+        resultCache.clear();
+        readerGeneration.incrementAndGet();
+        previous.close();
+    }
+
+    /**
+     * Ottiene un IndexSearcher dal SearcherManager corrente.
+     * Deve essere sempre seguito da {@link #releaseSearcher(IndexSearcher)}.
+     */
+    private IndexSearcher acquireSearcher() throws IOException {
+        while (true) {
+            SearcherManager manager = searcherManager;
+            try {
+                return manager.acquire();
+            } catch (AlreadyClosedException e) {
+                // Il manager è stato chiuso da switchIndex: riprova con quello nuovo
+                if (manager == searcherManager) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rilascia un IndexSearcher ottenuto con {@link #acquireSearcher()}.
+     * Come SearcherManager.release decrementa il riferimento al reader, ma resta
+     * corretto anche se nel frattempo switchIndex ha sostituito il manager.
+     */
+    private void releaseSearcher(IndexSearcher indexSearcher) throws IOException {
+        indexSearcher.getIndexReader().decRef();
+    }
+
+    /**
+     * Chiave della cache dei risultati. Contiene l'identità del reader su cui è
+     * stata eseguita la query, così un risultato non viene mai servito per una
+     * versione dell'indice diversa da quella che lo ha prodotto.
+     */
+    private static final class ResultCacheKey {
+        private final Object readerKey;
+        private final String query;
+        private final int maxResults;
+
+        ResultCacheKey(IndexReader reader, String query, int maxResults) {
+            IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+            this.readerKey = cacheHelper != null ? cacheHelper.getKey() : reader;
+            this.query = query;
+            this.maxResults = maxResults;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ResultCacheKey)) {
+                return false;
+            }
+            ResultCacheKey other = (ResultCacheKey) o;
+            return readerKey == other.readerKey && maxResults == other.maxResults && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(readerKey), query, maxResults);
+        }
+    }
+
+    /**
+     * Normalizza la stringa di query per la cache: rimuove gli spazi iniziali e
+     * finali e riduce a uno gli spazi consecutivi. Maiuscole e minuscole non
+     * vengono toccate perché sono significative per gli operatori booleani.
+     */
+    static String normalizeQuery(String queryString) {
+        return queryString == null ? "" : WHITESPACE_PATTERN.matcher(queryString.trim()).replaceAll(" ");
+    }
+
+    /**
+     * Abilita o disabilita la cache dei risultati, ad esempio per misurare il costo
+     * effettivo delle query. Disabilitandola la cache viene svuotata.
+     * @param enabled true per servire dalla cache le query ripetute
+     */
+    public void setResultCacheEnabled(boolean enabled) {
+        this.resultCacheEnabled = enabled;
+        if (!enabled) {
+            resultCache.clear();
+        }
+    }
+
+    /**
+     * Abilita o disabilita la cache delle query analizzate, così che ogni ricerca
+     * ripeta il parsing. Disabilitandola la cache viene svuotata.
+     * @param enabled true per riusare le query già analizzate
+     */
+    public void setQueryCacheEnabled(boolean enabled) {
+        this.queryCacheEnabled = enabled;
+        if (!enabled) {
+            queryCache.clear();
+        }
+    }
+
+    /**
+     * Imposta il log in cui registrare l'esito delle query. Per impostazione predefinita
+     * le query non vengono registrate; le applicazioni usano {@link QueryLog#getDefault()}.
+     * Il log non viene chiuso dal Searcher.
+     * @param queryLog log delle query, oppure null per non registrarle
+     */
+    public void setQueryLog(QueryLog queryLog) {
+        this.queryLog = queryLog;
+    }
+
+    /**
+     * Restituisce le statistiche della cache dei risultati.
+     * @return contatori di hit, miss e rimozioni della cache
+     */
+    public LruCache.Stats getResultCacheStats() {
+        return resultCache.stats();
+    }
+
+    /**
+     * Restituisce le statistiche della cache delle query analizzate.
+     * @return contatori di hit, miss e rimozioni della cache
+     */
+    public LruCache.Stats getQueryCacheStats() {
+        return queryCache.stats();
+    }
+
+    /**
+     * Numero di ricerche eseguite, comprese quelle servite dalla cache e quelle fallite.
+     * @return ricerche eseguite
+     */
+    public long getSearchCount() {
+        return searchCount.sum();
+    }
+
+    /**
+     * Numero di ricerche terminate con un errore.
+     * @return ricerche fallite
+     */
+    public long getSearchErrorCount() {
+        return searchErrors.sum();
+    }
+
+    /**
+     * Restituisce l'istogramma delle latenze delle ricerche, in nanosecondi.
+     * @return istogramma delle latenze, aggiornato a ogni ricerca
+     */
+    public LatencyHistogram getSearchLatencyHistogram() {
+        return searchLatency;
+    }
+
+    /**
+     * Numero di reader aperti dopo il primo, per un refresh o un cambio di indice.
+     * @return generazione del reader corrente
+     */
+    public long getReaderGeneration() {
+        return readerGeneration.get();
     }
 
     /**
@@ -89,83 +637,568 @@ public class Searcher implements AutoCloseable {
      * @throws ParseException in caso di errori nel parsing della query
      */
     public List<SearchResult> search(String queryString, int maxResults) throws IOException, ParseException {
-        LOGGER.info("Esecuzione query: " + queryString);
+        return search(queryString, maxResults, null, null, true);
+    }
+
+    /**
+     * Esegue una ricerca che può essere interrotta, ad esempio perché superata da
+     * una query più recente o perché ha esaurito il tempo a disposizione. Il timeout
+     * viene controllato durante la valutazione della query e prima di ogni snippet.
+     * @param queryString stringa di query
+     * @param maxResults numero massimo di risultati da restituire
+     * @param timeout condizione di interruzione
+     * @return lista di risultati della ricerca
+     * @throws CancellationException se la ricerca è stata interrotta dal timeout
+     * @throws IOException in caso di errori di I/O
+     * @throws ParseException in caso di errori nel parsing della query
+     */
+    public List<SearchResult> search(String queryString, int maxResults, QueryTimeout timeout)
+            throws IOException, ParseException {
+        return search(queryString, maxResults, timeout, null, true);
+    }
+
+    /**
+     * Esegue una ricerca, eventualmente interrompibile e limitata ai documenti con i percorsi indicati.
+     * I risultati delle ricerche limitate non vengono messi in cache.
+     * @param queryString stringa di query
+     * @param maxResults numero massimo di risultati da restituire
+     * @param timeout condizione di interruzione, oppure null
+     * @param paths percorsi relativi dei documenti tra cui cercare, oppure null per tutto l'indice
+     * @param logged false per non registrare la query nel log delle query
+     */
+    List<SearchResult> search(String queryString, int maxResults, QueryTimeout timeout,
+            Collection<String> paths, boolean logged) throws IOException, ParseException {
+        LOGGER.fine("Esecuzione query: " + queryString);
+        long start = System.nanoTime();
         
+        IndexSearcher indexSearcher = acquireSearcher();
         try {
+            ResultCacheKey cacheKey = new ResultCacheKey(indexSearcher.getIndexReader(), normalizeQuery(queryString), maxResults);
+            boolean cacheable = resultCacheEnabled && paths == null;
+            Page cached = cacheable ? resultCache.get(cacheKey) : null;
+            if (cached != null) {
+                logSearchOutcome(queryString, cached.getResults(), start, logged);
+                return new ArrayList<>(cached.getResults());
+            }
+
             Query query = parseQuery(queryString);
-            TopDocs topDocs = searcher.search(query, maxResults);
-            
-            List<SearchResult> results = new ArrayList<>();
-            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-                Document doc = searcher.doc(scoreDoc.doc);
-                String filename = doc.get("filename");
-                String content = doc.get("content");
-                
-                // Estrai uno snippet rilevante dal contenuto
-                String snippet = extractRelevantSnippet(content, queryString, 150);
-                
-                results.add(new SearchResult(filename, snippet, scoreDoc.score));
+            Query restricted = query;
+            if (paths != null) {
+                List<BytesRef> terms = new ArrayList<>(paths.size());
+                for (String path : paths) {
+                    terms.add(new BytesRef(path));
+                }
+                restricted = new BooleanQuery.Builder()
+                        .add(query, BooleanClause.Occur.MUST)
+                        .add(new TermInSetQuery(Indexer.PATH_FIELD, terms), BooleanClause.Occur.FILTER)
+                        .build();
             }
-            
-            // Log delle query senza risultati
-            if (results.isEmpty()) {
-                LOGGER.warning("Nessun risultato trovato per la query: " + queryString);
-                logQueryWithNoResults(queryString);
+            TopDocs topDocs;
+            if (timeout == null) {
+                topDocs = querySearcher(indexSearcher).search(restricted, maxResults);
             } else {
-                LOGGER.info("Trovati " + results.size() + " risultati per la query: " + queryString);
+                // Il timeout è un'impostazione dell'IndexSearcher: serve una vista riservata a questa query
+                IndexSearcher timed = sequentialSearcher(indexSearcher);
+                timed.setTimeout(timeout);
+                topDocs = timed.search(restricted, maxResults);
+                if (timed.timedOut()) {
+                    throw new CancellationException("Ricerca interrotta: " + queryString);
+                }
             }
+            List<SearchResult> results = toResults(indexSearcher, query, queryString, topDocs.scoreDocs, timeout, null, null);
+            
+            if (cacheable) {
+                resultCache.put(cacheKey, new Page(List.copyOf(results), nextCursor(topDocs, maxResults)));
+            }
+            logSearchOutcome(queryString, results, start, logged);
             
             return results;
+        } catch (CancellationException e) {
+            // Interruzione richiesta dal chiamante: non è un errore della query
+            throw e;
+        } catch (Exception e) {
+            if (logged || !(e instanceof ParseException)) {
+                LOGGER.log(Level.SEVERE, "Errore durante l'esecuzione della query: " + queryString, e);
+            } else {
+                // Query incompleta durante la digitazione: non è un errore da segnalare
+                LOGGER.fine("Query non valida: " + queryString + " (" + e.getMessage() + ")");
+            }
+            logQueryError(queryString, e, start, logged);
+            throw e;
+        } finally {
+            releaseSearcher(indexSearcher);
+        }
+    }
+
+    /**
+     * Restituisce una pagina di risultati, a partire dal cursore ottenuto con la pagina precedente.
+     * A differenza di {@link #search(String, int)}, il costo di una pagina non dipende dalla sua
+     * posizione: la ricerca riparte dall'ultimo documento restituito ({@code searchAfter}) invece
+     * di raccogliere e scartare tutti i risultati delle pagine precedenti.
+     * <p>
+     * Se tra una pagina e la successiva l'indice viene aggiornato, alcuni risultati possono
+     * comparire due volte o essere saltati. Solo la prima pagina usa la cache dei risultati,
+     * condivisa con {@link #search(String, int)}: le successive dipendono dal cursore.
+     * @param queryString stringa di query
+     * @param pageSize numero di risultati per pagina
+     * @param cursor cursore restituito da {@link Page#getNextCursor()}, oppure null per la prima pagina
+     * @return pagina di risultati
+     * @throws IllegalArgumentException se il cursore non è valido
+     * @throws IOException in caso di errori di I/O
+     * @throws ParseException in caso di errori nel parsing della query
+     */
+    public Page searchPage(String queryString, int pageSize, String cursor) throws IOException, ParseException {
+        return searchPage(queryString, pageSize, cursor, null, null);
+    }
+
+    /**
+     * Restituisce una pagina di risultati, come {@link #searchPage(String, int, String)},
+     * interrompendo la ricerca quando il timeout lo richiede e notificando ogni risultato
+     * appena è pronto, prima di generare gli snippet dei successivi.
+     * @param queryString stringa di query
+     * @param pageSize numero di risultati per pagina
+     * @param cursor cursore restituito da {@link Page#getNextCursor()}, oppure null per la prima pagina
+     * @param timeout condizione di interruzione, controllata durante la valutazione della query
+     *                e tra un risultato e l'altro; null per non interrompere la ricerca
+     * @param onResult destinatario dei risultati man mano che vengono prodotti, oppure null
+     * @return pagina di risultati
+     * @throws CancellationException se la ricerca è stata interrotta dal timeout
+     * @throws IllegalArgumentException se il cursore non è valido
+     * @throws IOException in caso di errori di I/O
+     * @throws ParseException in caso di errori nel parsing della query
+     */
+    public Page searchPage(String queryString, int pageSize, String cursor, QueryTimeout timeout,
+                           Consumer<SearchResult> onResult) throws IOException, ParseException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("La dimensione della pagina deve essere positiva: " + pageSize);
+        }
+        ScoreDoc after = cursor == null ? null : decodeCursor(cursor);
+        LOGGER.fine("Esecuzione query: " + queryString + (after != null ? " (pagina successiva)" : ""));
+        long start = System.nanoTime();
+
+        IndexSearcher indexSearcher = acquireSearcher();
+        try {
+            ResultCacheKey cacheKey = new ResultCacheKey(indexSearcher.getIndexReader(), normalizeQuery(queryString), pageSize);
+            boolean cacheable = resultCacheEnabled && after == null;
+            Page cached = cacheable ? resultCache.get(cacheKey) : null;
+            if (cached != null) {
+                if (onResult != null) {
+                    cached.getResults().forEach(onResult);
+                }
+                logSearchOutcome(queryString, cached.getResults(), start, true);
+                return new Page(new ArrayList<>(cached.getResults()), cached.getNextCursor());
+            }
+
+            Query query = parseQuery(queryString);
+            TopDocs topDocs;
+            if (timeout == null) {
+                topDocs = querySearcher(indexSearcher).searchAfter(after, query, pageSize);
+            } else {
+                IndexSearcher timed = sequentialSearcher(indexSearcher);
+                timed.setTimeout(timeout);
+                topDocs = timed.searchAfter(after, query, pageSize);
+                if (timed.timedOut()) {
+                    throw new CancellationException("Ricerca interrotta: " + queryString);
+                }
+            }
+            List<SearchResult> results = toResults(indexSearcher, query, queryString, topDocs.scoreDocs, timeout,
+                    null, onResult);
+            String nextCursor = nextCursor(topDocs, pageSize);
+            if (cacheable) {
+                resultCache.put(cacheKey, new Page(List.copyOf(results), nextCursor));
+            }
+            logSearchOutcome(queryString, results, start, true);
+            return new Page(results, nextCursor);
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Errore durante l'esecuzione della query: " + queryString, e);
-            logQueryError(queryString, e);
+            logQueryError(queryString, e, start, true);
             throw e;
+        } finally {
+            releaseSearcher(indexSearcher);
         }
     }
-    
+
+    /**
+     * Una pagina piena può non essere l'ultima: il cursore punta al suo ultimo documento.
+     */
+    private static String nextCursor(TopDocs topDocs, int pageSize) {
+        return topDocs.scoreDocs.length == pageSize ? encodeCursor(topDocs.scoreDocs[pageSize - 1]) : null;
+    }
+
+    private static String encodeCursor(ScoreDoc scoreDoc) {
+        ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BYTES);
+        buffer.put(CURSOR_FORMAT).putInt(scoreDoc.doc).putFloat(scoreDoc.score);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    private static ScoreDoc decodeCursor(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursore non valido: " + cursor, e);
+        }
+        if (bytes.length != CURSOR_BYTES || bytes[0] != CURSOR_FORMAT) {
+            throw new IllegalArgumentException("Cursore non valido: " + cursor);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, CURSOR_BYTES - 1);
+        return new ScoreDoc(buffer.getInt(), buffer.getFloat());
+    }
+
     /**
-     * Registra le query che non hanno prodotto risultati in un file di log.
-     * @param queryString la query che non ha prodotto risultati
+     * Esegue in parallelo un insieme di query, tutte sulla stessa versione dell'indice.
+     * Ogni query viene eseguita da un thread del pool dei batch, di proprietà del Searcher,
+     * senza suddividerla in slice; i campi memorizzati dei documenti trovati da più query
+     * vengono letti una sola volta.
+     * Un errore in una query non interrompe le altre: viene riportato nel suo risultato.
+     * Le query del batch non passano dalla cache dei risultati e non vengono registrate
+     * nel log delle query, ma sono comprese nelle statistiche di ricerca.
+     * @param queries query da eseguire
+     * @param maxResults numero massimo di risultati per query
+     * @param threads numero di thread con cui eseguire le query
+     * @return un risultato per ogni query, nello stesso ordine delle query
+     * @throws IOException in caso di errori di I/O o di interruzione
      */
-    private void logQueryWithNoResults(String queryString) {
+    public List<BatchResult> searchBatch(List<String> queries, int maxResults, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Il numero di thread deve essere positivo: " + threads);
+        }
+        BatchResult[] results = new BatchResult[queries.size()];
+        IndexSearcher indexSearcher = acquireSearcher();
+        // Al più threads esecutori per batch, che prendono le query da un indice condiviso
+        AtomicInteger nextQuery = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            // Le query sono già distribuite sul pool: ognuna usa una vista sequenziale dello stesso reader
+            IndexSearcher sequential = indexSearcher.getExecutor() == null ? indexSearcher : sequentialSearcher(indexSearcher);
+            Map<Integer, ResultFieldsVisitor> sharedFields = new ConcurrentHashMap<>();
+            for (int t = 0; t < Math.min(threads, queries.size()); t++) {
+                futures.add(batchExecutor.submit(() -> {
+                    int index;
+                    while ((index = nextQuery.getAndIncrement()) < results.length) {
+                        results[index] = batchQuery(sequential, queries.get(index), maxResults, sharedFields);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return Arrays.asList(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch di query interrotto");
+        } catch (ExecutionException e) {
+            throw new IOException("Errore nell'esecuzione del batch di query", e.getCause());
+        } finally {
+            // Senza interrompere i thread del pool, che resta in uso: le query non ancora
+            // iniziate vengono saltate e si attende la fine di quelle in corso
+            nextQuery.set(results.length);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // Già riportato sopra
+                }
+            }
+            releaseSearcher(indexSearcher);
+        }
+    }
+
+    private BatchResult batchQuery(IndexSearcher indexSearcher, String queryString, int maxResults,
+            Map<Integer, ResultFieldsVisitor> sharedFields) {
+        long start = System.nanoTime();
         try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String timestamp = dateFormat.format(new Date());
+            Query query = parseQuery(queryString);
+            TopDocs topDocs = indexSearcher.search(query, maxResults);
+            List<SearchResult> results = toResults(indexSearcher, query, queryString, topDocs.scoreDocs, null, sharedFields, null);
+            logSearchOutcome(queryString, results, start, false);
+            return new BatchResult(queryString, results, System.nanoTime() - start, null);
+        } catch (Exception e) {
+            // L'errore è riportato nel BatchResult: qui si aggiornano solo le statistiche
+            LOGGER.fine("Errore durante l'esecuzione della query: " + queryString + " (" + e + ")");
+            logQueryError(queryString, e, start, false);
+            return new BatchResult(queryString, List.of(), System.nanoTime() - start, e);
+        }
+    }
+
+    /**
+     * Costruisce i risultati, con i relativi snippet, per i documenti indicati.
+     * @param timeout condizione di interruzione controllata prima di ogni snippet, oppure null
+     * @param sharedFields campi memorizzati già letti, condivisi tra più query, oppure null
+     */
+    private List<SearchResult> toResults(IndexSearcher indexSearcher, Query query, String queryString,
+            ScoreDoc[] scoreDocs, QueryTimeout timeout, Map<Integer, ResultFieldsVisitor> sharedFields,
+            Consumer<SearchResult> onResult) throws IOException {
+        OffsetHighlighter highlighter = new OffsetHighlighter(query, indexSearcher.getIndexReader(), "content");
+        
+        StoredFields storedFields = indexSearcher.getIndexReader().storedFields();
+        
+        List<SearchResult> results = new ArrayList<>();
+        for (ScoreDoc scoreDoc : scoreDocs) {
+            if (timeout != null && timeout.shouldExit()) {
+                throw new CancellationException("Ricerca interrotta: " + queryString);
+            }
+            // Carica solo i campi necessari al risultato: il contenuto dell'archivio
+            // esterno viene letto più avanti, e solo per i blocchi dello snippet
+            ResultFieldsVisitor fields;
+            if (sharedFields == null) {
+                fields = new ResultFieldsVisitor();
+                storedFields.document(scoreDoc.doc, fields);
+            } else {
+                // Lettura fuori dalla mappa, senza bloccarla durante l'I/O: se due query leggono
+                // lo stesso documento insieme, viene conservata la prima copia
+                fields = sharedFields.get(scoreDoc.doc);
+                if (fields == null) {
+                    ResultFieldsVisitor loaded = new ResultFieldsVisitor();
+                    storedFields.document(scoreDoc.doc, loaded);
+                    fields = sharedFields.putIfAbsent(scoreDoc.doc, loaded);
+                    if (fields == null) {
+                        fields = loaded;
+                    }
+                }
+            }
+            CharSequence content = fields.content;
+            if (content == null && fields.contentPointer >= 0) {
+                content = externalContent(indexSearcher.getIndexReader(), fields.contentPointer);
+            }
             
-            try (PrintWriter writer = new PrintWriter(new FileWriter(QUERY_LOG_FILE, true))) {
-                writer.println(timestamp + " | NO_RESULTS | " + queryString);
+            // Snippet costruito dagli offset indicizzati; gli indici creati senza offset
+            // usano la ricerca testuale dei termini nel contenuto
+            OffsetHighlighter.Snippet snippet;
+            try {
+                snippet = highlighter.highlight(scoreDoc.doc, content, SNIPPET_LENGTH);
+            } catch (UncheckedIOException e) {
+                LOGGER.log(Level.WARNING, "Impossibile leggere il contenuto di " + fields.filename, e);
+                snippet = highlighter.highlight(scoreDoc.doc, null, SNIPPET_LENGTH);
             }
+            SearchResult result;
+            if (snippet != null) {
+                result = new SearchResult(fields.filename, fields.path, snippet.getText(), scoreDoc.score,
+                        snippet.getHighlights());
+            } else {
+                result = new SearchResult(fields.filename, fields.path,
+                        extractRelevantSnippet(content != null ? content.toString() : null, queryString, SNIPPET_LENGTH),
+                        scoreDoc.score, List.of());
+            }
+            results.add(result);
+            if (onResult != null) {
+                onResult.accept(result);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Visitor che carica dai campi memorizzati solo il nome del file, il contenuto
+     * (se memorizzato nell'indice) e il riferimento all'archivio esterno.
+     */
+    private static final class ResultFieldsVisitor extends StoredFieldVisitor {
+        private String filename;
+        private String path;
+        private String content;
+        private long contentPointer = -1;
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) {
+            switch (fieldInfo.name) {
+                case "filename":
+                case "content":
+                case Indexer.PATH_FIELD:
+                case Indexer.CONTENT_POINTER_FIELD:
+                    return Status.YES;
+                default:
+                    return Status.NO;
+            }
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, String value) {
+            if ("filename".equals(fieldInfo.name)) {
+                filename = value;
+            } else if (Indexer.PATH_FIELD.equals(fieldInfo.name)) {
+                path = value;
+            } else if ("content".equals(fieldInfo.name)) {
+                content = value;
+            }
+        }
+
+        @Override
+        public void longField(FieldInfo fieldInfo, long value) {
+            if (Indexer.CONTENT_POINTER_FIELD.equals(fieldInfo.name)) {
+                contentPointer = value;
+            }
+        }
+    }
+
+    /**
+     * Restituisce il contenuto di un documento memorizzato nell'archivio esterno
+     * dell'indice. Viene letta solo l'intestazione; i blocchi vengono caricati quando servono.
+     * @return contenuto del documento, oppure null se l'archivio non è disponibile
+     */
+    private CharSequence externalContent(IndexReader reader, long pointer) {
+        try {
+            ContentStore contentStore = contentStore(reader, ContentStore.generationOf(pointer));
+            return contentStore != null ? contentStore.entry(pointer) : null;
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Impossibile scrivere nel file di log", e);
+            LOGGER.log(Level.WARNING, "Impossibile leggere l'archivio dei contenuti dell'indice", e);
+            return null;
+        }
+    }
+
+    /**
+     * Apre l'archivio esterno registrato nel commit di un nuovo reader e lo mantiene
+     * aperto finché il reader non viene chiuso. Così i reader ancora aperti su un commit
+     * precedente continuano a leggere il file di quel commit, anche dopo una ricostruzione
+     * completa dell'indice.
+     */
+    private void retainContentStore(IndexReader reader) throws IOException {
+        Path indexPath = indexPath(reader);
+        if (indexPath == null || reader.getReaderCacheHelper() == null) {
+            return;
+        }
+        String fileName = ((DirectoryReader) reader).getIndexCommit().getUserData().get(ContentStore.COMMIT_DATA_KEY);
+        int generation = ContentStore.generation(fileName != null ? fileName : ContentStore.LEGACY_FILE_NAME);
+        if (generation >= 0) {
+            contentStore(reader, generation);
+        }
+    }
+
+    /**
+     * Restituisce l'archivio di una generazione usato da un reader, aprendolo se necessario.
+     * I reader near-real-time possono contenere documenti di un file non ancora registrato
+     * in un commit: anche quel file resta associato al reader fino alla sua chiusura.
+     * @return archivio, oppure null se il file non esiste o il reader non è su file system
+     */
+    private ContentStore contentStore(IndexReader reader, int generation) throws IOException {
+        Path indexPath = indexPath(reader);
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (indexPath == null || cacheHelper == null) {
+            return null;
+        }
+        Map<Integer, ContentStore> stores = readerContentStores.get(cacheHelper.getKey());
+        ContentStore contentStore = stores != null ? stores.get(generation) : null;
+        if (contentStore != null) {
+            return contentStore;
+        }
+
+        Path file = indexPath.resolve(ContentStore.fileName(generation));
+        boolean firstStore;
+        synchronized (contentStores) {
+            stores = readerContentStores.get(cacheHelper.getKey());
+            if (stores != null && stores.containsKey(generation)) {
+                return stores.get(generation);
+            }
+            SharedContentStore shared = contentStores.get(file);
+            if (shared == null) {
+                if (!Files.exists(file)) {
+                    return null;
+                }
+                shared = new SharedContentStore(ContentStore.openForReading(file));
+                contentStores.put(file, shared);
+            }
+            shared.references++;
+            firstStore = stores == null;
+            if (firstStore) {
+                stores = new ConcurrentHashMap<>();
+                readerContentStores.put(cacheHelper.getKey(), stores);
+            }
+            stores.put(generation, shared.store);
+            contentStore = shared.store;
+        }
+        if (firstStore) {
+            cacheHelper.addClosedListener(this::releaseContentStores);
+        }
+        return contentStore;
+    }
+
+    /**
+     * Rilascia gli archivi usati da un reader chiuso, chiudendo quelli non più usati.
+     */
+    private void releaseContentStores(IndexReader.CacheKey readerKey) throws IOException {
+        List<ContentStore> unused = new ArrayList<>();
+        synchronized (contentStores) {
+            Map<Integer, ContentStore> stores = readerContentStores.remove(readerKey);
+            if (stores == null) {
+                return;
+            }
+            contentStores.values().removeIf(shared -> {
+                if (stores.containsValue(shared.store) && --shared.references == 0) {
+                    unused.add(shared.store);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (ContentStore contentStore : unused) {
+            contentStore.close();
+        }
+    }
+
+    /**
+     * Restituisce la directory di un indice su file system, oppure null.
+     */
+    private static Path indexPath(IndexReader reader) {
+        if (!(reader instanceof DirectoryReader)) {
+            return null;
+        }
+        Directory directory = FilterDirectory.unwrap(((DirectoryReader) reader).directory());
+        if (!(directory instanceof FSDirectory)) {
+            return null;
+        }
+        return ((FSDirectory) directory).getDirectory().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Registra l'esito di una ricerca, anche se servita dalla cache.
+     */
+    private void logSearchOutcome(String queryString, List<SearchResult> results, long start, boolean logged) {
+        long latency = System.nanoTime() - start;
+        searchCount.increment();
+        searchLatency.record(latency);
+        if (results.isEmpty()) {
+            LOGGER.fine("Nessun risultato trovato per la query: " + queryString);
+        } else {
+            LOGGER.fine("Trovati " + results.size() + " risultati per la query: " + queryString);
+        }
+        QueryLog log = logged ? queryLog : null;
+        if (log != null) {
+            log.log(queryString, results.isEmpty() ? QueryLog.Outcome.NO_RESULTS : QueryLog.Outcome.OK,
+                    results.size(), latency, null);
         }
     }
     
     /**
-     * Registra gli errori durante l'esecuzione delle query in un file di log.
+     * Registra gli errori durante l'esecuzione delle query.
      * @param queryString la query che ha generato l'errore
      * @param e l'eccezione generata
+     * @param start istante di inizio della ricerca, da {@link System#nanoTime()}
+     * @param logged false per aggiornare solo le statistiche, senza scrivere nel log delle query
      */
-    private void logQueryError(String queryString, Exception e) {
-        try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String timestamp = dateFormat.format(new Date());
-            
-            try (PrintWriter writer = new PrintWriter(new FileWriter(QUERY_LOG_FILE, true))) {
-                writer.println(timestamp + " | ERROR | " + queryString + " | " + e.getMessage());
-            }
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "Impossibile scrivere nel file di log", ex);
+    private void logQueryError(String queryString, Exception e, long start, boolean logged) {
+        long latency = System.nanoTime() - start;
+        searchCount.increment();
+        searchErrors.increment();
+        searchLatency.record(latency);
+        QueryLog log = logged ? queryLog : null;
+        if (log != null) {
+            log.log(queryString, QueryLog.Outcome.ERROR, 0, latency, e.getMessage());
         }
     }
     
     /**
      * Estrae uno snippet rilevante dal contenuto in base alla query.
+     * Usato solo per gli indici creati senza offset sul campo del contenuto.
      * @param content il contenuto completo del documento
      * @param queryString la query di ricerca
      * @param maxLength la lunghezza massima dello snippet
      * @return uno snippet rilevante
      */
-    private String extractRelevantSnippet(String content, String queryString, int maxLength) {
+    static String extractRelevantSnippet(String content, String queryString, int maxLength) {
         if (content == null || content.isEmpty()) {
             return "";
         }
@@ -231,14 +1264,58 @@ public class Searcher implements AutoCloseable {
         return snippet;
     }
 
+    /**
+     * Verifica la sintassi di una query senza eseguirla e senza registrarla nel log.
+     * La query analizzata resta nella cache, quindi la ricerca successiva non ripete il parsing.
+     * @param queryString stringa di query
+     * @throws ParseException se la query non è valida
+     */
+    public void validateQuery(String queryString) throws ParseException {
+        parseQuery(queryString);
+    }
+
     /**
      * Analizza la query e la converte in un oggetto Query di Lucene.
      * Supporta prefissi "nome:" e "contenuto:" e phrase query tra virgolette.
+     * Le query già analizzate vengono restituite dalla cache senza ripetere il parsing;
+     * le query non valide non vengono messe in cache.
+     * @param queryString stringa di query
+     * @return oggetto Query di Lucene
+     * @throws ParseException in caso di errori nel parsing della query
+     */
+    Query parseQuery(String queryString) throws ParseException {
+        String normalized = normalizeQuery(queryString);
+        if (!queryCacheEnabled) {
+            return parseQueryUncached(normalized);
+        }
+        Query query = queryCache.get(normalized);
+        if (query == null) {
+            query = parseQueryUncached(normalized);
+            queryCache.put(normalized, query);
+        }
+        return query;
+    }
+
+    /**
+     * Analizza la query con un insieme di parser preso in prestito dal pool, senza usare la cache.
+     */
+    Query parseQueryUncached(String queryString) throws ParseException {
+        QueryParsers parsers = borrowParsers();
+        try {
+            return parseQuery(queryString, parsers);
+        } finally {
+            returnParsers(parsers);
+        }
+    }
+
+    /**
+     * Analizza la query usando i parser forniti, riservati al thread corrente.
      * @param queryString stringa di query
+     * @param parsers parser presi in prestito dal pool
      * @return oggetto Query di Lucene
      * @throws ParseException in caso di errori nel parsing della query
      */
-    private Query parseQuery(String queryString) throws ParseException {
+    private Query parseQuery(String queryString, QueryParsers parsers) throws ParseException {
         // Verifica se la query è vuota o null
         if (queryString == null || queryString.trim().isEmpty()) {
             throw new ParseException("La query non può essere vuota");
@@ -247,9 +1324,7 @@ public class Searcher implements AutoCloseable {
         // Normalizza la query
         queryString = queryString.trim();
         
-        // Pattern per riconoscere i prefissi "nome:" e "contenuto:"
-        Pattern pattern = Pattern.compile("(nome|contenuto):(\"[^\"]*\"|\\S+)");
-        Matcher matcher = pattern.matcher(queryString);
+        Matcher matcher = FIELD_PREFIX_PATTERN.matcher(queryString);
         
         StringBuilder filenameQuery = new StringBuilder();
         StringBuilder contentQuery = new StringBuilder();
@@ -287,20 +1362,20 @@ public class Searcher implements AutoCloseable {
             List<Query> queries = new ArrayList<>();
             
             if (filenameQuery.length() > 0) {
-                queries.add(filenameParser.parse(filenameQuery.toString().trim()));
+                queries.add(parsers.filenameParser.parse(filenameQuery.toString().trim()));
             }
             
             if (contentQuery.length() > 0) {
-                queries.add(contentParser.parse(contentQuery.toString().trim()));
+                queries.add(parsers.contentParser.parse(contentQuery.toString().trim()));
             }
             
             if (generalQuery.length() > 0 && generalQuery.toString().trim().length() > 0) {
-                queries.add(multiFieldParser.parse(generalQuery.toString().trim()));
+                queries.add(parsers.multiFieldParser.parse(generalQuery.toString().trim()));
             }
             
             if (queries.isEmpty()) {
                 // Fallback alla ricerca generale se qualcosa è andato storto
-                return multiFieldParser.parse(queryString);
+                return parsers.multiFieldParser.parse(queryString);
             }
             
             // Combina le query con OR
@@ -314,7 +1389,7 @@ public class Searcher implements AutoCloseable {
             return builder.build();
         } else {
             // Usa il multiFieldParser per cercare in entrambi i campi
-            return multiFieldParser.parse(queryString);
+            return parsers.multiFieldParser.parse(queryString);
         }
     }
 
@@ -323,10 +1398,97 @@ public class Searcher implements AutoCloseable {
      * @throws IOException in caso di errori di I/O
      */
     @Override
-    public void close() throws IOException {
-        searcher.getIndexReader().close();
+    public synchronized void close() throws IOException {
+        refreshExecutor.shutdownNow();
+        searcherManager.close();
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        batchExecutor.shutdown();
         filenameAnalyzer.close();
         contentAnalyzer.close();
+        synchronized (contentStores) {
+            for (SharedContentStore shared : contentStores.values()) {
+                shared.store.close();
+            }
+            contentStores.clear();
+            readerContentStores.clear();
+        }
+    }
+
+    /**
+     * Pagina di risultati restituita da {@link Searcher#searchPage(String, int, String)}.
+     */
+    public static class Page {
+        private final List<SearchResult> results;
+        private final String nextCursor;
+
+        public Page(List<SearchResult> results, String nextCursor) {
+            this.results = results;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<SearchResult> getResults() {
+            return results;
+        }
+
+        /**
+         * Restituisce il cursore opaco da passare a {@code searchPage} per la pagina successiva.
+         * @return cursore, oppure null se questa è l'ultima pagina
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean hasNext() {
+            return nextCursor != null;
+        }
+    }
+
+    /**
+     * Risultato di una query eseguita con {@link Searcher#searchBatch(List, int, int)}.
+     */
+    public static class BatchResult {
+        private final String query;
+        private final List<SearchResult> results;
+        private final long elapsedNanos;
+        private final Exception error;
+
+        public BatchResult(String query, List<SearchResult> results, long elapsedNanos, Exception error) {
+            this.query = query;
+            this.results = results;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return risultati della query; vuoto se la query è fallita
+         */
+        public List<SearchResult> getResults() {
+            return results;
+        }
+
+        /**
+         * @return tempo di esecuzione della query, compresi parsing e snippet, in nanosecondi
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return errore della query, oppure null se è stata eseguita correttamente
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
     }
 
     /**
@@ -334,19 +1496,39 @@ public class Searcher implements AutoCloseable {
      */
     public static class SearchResult {
         private final String filename;
+        private final String path;
         private final String snippet;
         private final float score;
+        private final List<Highlight> highlights;
 
         public SearchResult(String filename, String snippet, float score) {
+            this(filename, snippet, score, List.of());
+        }
+
+        public SearchResult(String filename, String snippet, float score, List<Highlight> highlights) {
+            this(filename, null, snippet, score, highlights);
+        }
+
+        public SearchResult(String filename, String path, String snippet, float score, List<Highlight> highlights) {
             this.filename = filename;
+            this.path = path;
             this.snippet = snippet;
             this.score = score;
+            this.highlights = highlights;
         }
 
         public String getFilename() {
             return filename;
         }
 
+        /**
+         * Restituisce il percorso del file relativo alla directory dei dati.
+         * @return percorso relativo, oppure null per gli indici creati senza il campo del percorso
+         */
+        public String getPath() {
+            return path;
+        }
+
         public String getSnippet() {
             return snippet;
         }
@@ -355,9 +1537,44 @@ public class Searcher implements AutoCloseable {
             return score;
         }
 
+        /**
+         * Restituisce le porzioni dello snippet che corrispondono ai termini della query,
+         * ordinate e non sovrapposte.
+         * @return lista delle evidenziazioni (vuota se non disponibili)
+         */
+        public List<Highlight> getHighlights() {
+            return highlights;
+        }
+
         @Override
         public String toString() {
             return String.format("File: %s\nScore: %.4f\nSnippet: %s\n", filename, score, snippet);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Porzione evidenziata di uno snippet, espressa come intervallo [start, end) di caratteri.
+     */
+    public static class Highlight {
+        private final int start;
+        private final int end;
+
+        public Highlight(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+}
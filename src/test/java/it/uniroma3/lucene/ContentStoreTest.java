@@ -0,0 +1,53 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentStoreTest {
+    private static Path storePath;
+
+    @BeforeAll
+    static void setupDirectory() throws IOException {
+        storePath = Paths.get("target", "test-content-store");
+        Files.createDirectories(storePath);
+    }
+
+    @Test
+    void testContenutoSuPiuBlocchiConSurrogati() throws Exception {
+        // Testo più lungo di un blocco, con coppie di surrogati a cavallo dei confini
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 * ContentStore.CHUNK_CHARS) {
+            text.append("città 😀 ").append(text.length()).append(' ');
+        }
+        String expected = text.toString();
+
+        Path file = storePath.resolve(ContentStore.fileName(1));
+        Files.deleteIfExists(file);
+        long pointer;
+        long emptyPointer;
+        try (ContentStore writer = ContentStore.openForWriting(file)) {
+            pointer = writer.append(new StringReader(expected));
+            emptyPointer = writer.append(new StringReader(""));
+        }
+
+        try (ContentStore reader = ContentStore.openForReading(file)) {
+            assertEquals(1, ContentStore.generationOf(pointer));
+            ContentStore.Entry entry = reader.entry(pointer);
+            assertEquals(expected.length(), entry.length());
+            assertEquals(expected, entry.toString());
+
+            int boundary = ContentStore.CHUNK_CHARS;
+            assertEquals(expected.substring(boundary - 10, boundary + 10), entry.subSequence(boundary - 10, boundary + 10).toString());
+            assertEquals(expected.charAt(expected.length() - 1), entry.charAt(expected.length() - 1));
+
+            assertEquals(0, reader.entry(emptyPointer).length());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CorpusGeneratorTest {
+    private static Path corpusPath;
+
+    @BeforeAll
+    static void setupDirectory() throws IOException {
+        corpusPath = Paths.get("target", "test-corpus");
+        if (Files.exists(corpusPath)) {
+            try (Stream<Path> paths = Files.walk(corpusPath)) {
+                for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCorpusRiproducibileEIndicizzabile() throws Exception {
+        Map<String, String> first = generate("primo", 42);
+        Map<String, String> second = generate("secondo", 42);
+        Map<String, String> other = generate("altro", 7);
+
+        assertEquals(50, first.size());
+        assertEquals(first, second, "Lo stesso seme deve produrre gli stessi file");
+        assertNotEquals(first, other);
+        // Profondità 2: ogni file si trova in due livelli di sottodirectory
+        assertTrue(first.keySet().stream().allMatch(p -> p.split("/").length == 3));
+
+        Indexer indexer = new Indexer(corpusPath.resolve("indice").toString());
+        try {
+            assertEquals(50, indexer.createIndex(corpusPath.resolve("primo").toString()));
+        } finally {
+            indexer.close();
+        }
+    }
+
+    /**
+     * Genera un piccolo corpus e restituisce il contenuto dei file per percorso relativo.
+     */
+    private static Map<String, String> generate(String name, long seed) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setNumFiles(50);
+        generator.setFileSize(512, 0.5);
+        generator.setDirectoryTree(2, 3);
+        generator.setVocabulary(1000, 1.0);
+        Path directory = corpusPath.resolve(name);
+        assertEquals(50, generator.generate(directory));
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            Map<String, String> contents = new TreeMap<>();
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                contents.put(directory.relativize(file).toString().replace('\\', '/'), Files.readString(file));
+            }
+            return contents;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalSearchTest {
+
+    @Test
+    void testUltimaParolaComePrefisso() {
+        assertEquals("lucene java*", IncrementalSearch.toPrefixQuery("lucene java"));
+        assertEquals("nome:docu*", IncrementalSearch.toPrefixQuery("nome:docu"));
+        // Parola troppo corta, esclusa, dentro una frase o già con operatori
+        assertEquals("lucene j", IncrementalSearch.toPrefixQuery("lucene j"));
+        assertEquals("lucene NOT java", IncrementalSearch.toPrefixQuery("lucene NOT java"));
+        assertEquals("lucene -java", IncrementalSearch.toPrefixQuery("lucene -java"));
+        assertEquals("\"analisi del", IncrementalSearch.toPrefixQuery("\"analisi del"));
+        assertEquals("lucene AND", IncrementalSearch.toPrefixQuery("lucene AND"));
+        assertEquals("luc*", IncrementalSearch.toPrefixQuery("luc*"));
+    }
+
+    @Test
+    void testRiusoDeiRisultatiPrecedenti(@TempDir Path tempDir) throws Exception {
+        Path data = Files.createDirectories(tempDir.resolve("data"));
+        write(data, "a.txt", "alpha beta");
+        write(data, "b.txt", "alphabet soup");
+        write(data, "c.txt", "alpine lake");
+        write(data, "d.txt", "gamma delta");
+        Path index = tempDir.resolve("index");
+        Indexer indexer = new Indexer(index.toString());
+        indexer.createIndex(data.toString());
+        indexer.close();
+
+        try (Searcher searcher = new Searcher(index.toString())) {
+            IncrementalSearch incremental = new IncrementalSearch(searcher, 10, 10_000);
+
+            IncrementalSearch.Result first = incremental.search("al");
+            assertTrue(first.isComplete());
+            assertFalse(first.isReused());
+            assertEquals(Set.of("a.txt", "b.txt", "c.txt"), filenames(first.getResults()));
+
+            // "alph" estende "al": si cerca solo tra i tre documenti trovati
+            IncrementalSearch.Result second = incremental.search("alph");
+            assertTrue(second.isReused());
+            assertEquals(Set.of("a.txt", "b.txt"), filenames(second.getResults()));
+            // La ricerca limitata non viene salvata in cache: la ricerca completa non la trova
+            assertEquals(filenames(searcher.search("alph*", 10)), filenames(second.getResults()));
+            assertEquals(0, searcher.getResultCacheStats().getHits());
+
+            // Una nuova parola non estende il prefisso precedente, e "alph" torna un termine esatto
+            IncrementalSearch.Result third = incremental.search("alph gamma");
+            assertFalse(third.isReused());
+            assertEquals(Set.of("d.txt"), filenames(third.getResults()));
+        }
+    }
+
+    @Test
+    void testRicercaInterrotta(@TempDir Path tempDir) throws Exception {
+        Path data = Files.createDirectories(tempDir.resolve("data"));
+        write(data, "a.txt", "alpha beta");
+        Path index = tempDir.resolve("index");
+        Indexer indexer = new Indexer(index.toString());
+        indexer.createIndex(data.toString());
+        indexer.close();
+
+        try (Searcher searcher = new Searcher(index.toString())) {
+            assertThrows(CancellationException.class, () -> searcher.search("alpha", 10, () -> true));
+            assertEquals(1, searcher.search("alpha", 10, () -> false).size());
+            // L'interruzione non è un errore della query
+            assertEquals(0, searcher.getSearchErrorCount());
+        }
+    }
+
+    @Test
+    void testQueryIncompletaNonRegistrata(@TempDir Path tempDir) throws Exception {
+        Path data = Files.createDirectories(tempDir.resolve("data"));
+        write(data, "a.txt", "analisi del testo");
+        Path index = tempDir.resolve("index");
+        Indexer indexer = new Indexer(index.toString());
+        indexer.createIndex(data.toString());
+        indexer.close();
+
+        Path logFile = tempDir.resolve("query_log.txt");
+        try (Searcher searcher = new Searcher(index.toString());
+             QueryLog queryLog = new QueryLog(logFile)) {
+            searcher.setQueryLog(queryLog);
+            IncrementalSearch incremental = new IncrementalSearch(searcher, 10, 10_000);
+            assertThrows(ParseException.class, () -> incremental.search("contenuto:\"anal"));
+            incremental.search("analisi");
+            queryLog.flush();
+            // L'errore resta nelle statistiche, ma le ricerche incrementali non finiscono nel log
+            assertEquals(1, searcher.getSearchErrorCount());
+            assertTrue(!Files.exists(logFile) || Files.readAllLines(logFile).isEmpty());
+        }
+    }
+
+    private static void write(Path dir, String name, String content) throws Exception {
+        Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Set<String> filenames(List<Searcher.SearchResult> results) {
+        return results.stream().map(Searcher.SearchResult::getFilename).collect(Collectors.toSet());
+    }
+}
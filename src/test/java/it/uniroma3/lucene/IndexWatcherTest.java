@@ -0,0 +1,97 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexWatcherTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.exists(path)) {
+            Files.walk(path)
+                    .sorted((a, b) -> b.compareTo(a))
+                    .forEach(p -> {
+                        try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                    });
+        }
+    }
+
+    /**
+     * Ripete la ricerca finché il numero di risultati non è quello atteso o scade il timeout.
+     */
+    private static List<Searcher.SearchResult> awaitResults(Searcher searcher, String query, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        List<Searcher.SearchResult> results = searcher.search(query, 10);
+        while (results.size() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            results = searcher.search(query, 10);
+        }
+        return results;
+    }
+
+    @Test
+    void testFileAggiuntiEdEliminatiVisibiliSenzaReindicizzare() throws Exception {
+        Path dataPath = Paths.get("target", "test-data-watcher");
+        Path indexPath = Paths.get("target", "test-index-watcher");
+        deleteRecursively(dataPath);
+        deleteRecursively(indexPath);
+        Files.createDirectories(dataPath.resolve("sottocartella"));
+        Files.writeString(dataPath.resolve("iniziale.txt"), "documento iniziale");
+
+        Indexer indexer = new Indexer(indexPath.toString());
+        try (IndexWatcher watcher = new IndexWatcher(indexer, dataPath.toString(), 50);
+             Searcher searcher = new Searcher(watcher.getWriter())) {
+            watcher.addListener(searcher::refresh);
+            watcher.start();
+
+            assertEquals(1, searcher.search("iniziale", 10).size(), "Il watcher deve indicizzare i file esistenti all'avvio");
+
+            Files.writeString(dataPath.resolve("sottocartella").resolve("nuovo.txt"), "ornitorinco appena creato");
+            assertEquals(1, awaitResults(searcher, "ornitorinco", 1).size(), "Il nuovo file deve diventare ricercabile");
+
+            Files.delete(dataPath.resolve("sottocartella").resolve("nuovo.txt"));
+            assertEquals(0, awaitResults(searcher, "ornitorinco", 0).size(), "Il file eliminato non deve più comparire");
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test
+    void testErroreDiUnListenerNonFermaIlWatcher() throws Exception {
+        Path dataPath = Paths.get("target", "test-data-watcher-errors");
+        Path indexPath = Paths.get("target", "test-index-watcher-errors");
+        deleteRecursively(dataPath);
+        deleteRecursively(indexPath);
+        Files.createDirectories(dataPath);
+
+        Indexer indexer = new Indexer(indexPath.toString());
+        AtomicInteger notifications = new AtomicInteger();
+        try (IndexWatcher watcher = new IndexWatcher(indexer, dataPath.toString(), 50);
+             Searcher searcher = new Searcher(watcher.getWriter())) {
+            watcher.addListener(() -> {
+                if (notifications.incrementAndGet() == 1) {
+                    throw new IllegalStateException("errore simulato");
+                }
+            });
+            watcher.addListener(searcher::refresh);
+            watcher.start();
+
+            Files.writeString(dataPath.resolve("primo.txt"), "armadillo");
+            assertEquals(1, awaitResults(searcher, "armadillo", 1).size());
+            // Il thread del watcher è sopravvissuto all'eccezione e applica i batch successivi
+            Files.writeString(dataPath.resolve("secondo.txt"), "pangolino");
+            assertEquals(1, awaitResults(searcher, "pangolino", 1).size());
+            assertTrue(notifications.get() >= 2);
+        } finally {
+            indexer.close();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package it.uniroma3.lucene;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexerTest {
+    private static final Path DATA_PATH = Paths.get("data");
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.exists(path)) {
+            Files.walk(path)
+                    .sorted((a, b) -> b.compareTo(a))
+                    .forEach(p -> {
+                        try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                    });
+        }
+    }
+
+    private static String committedContentStore(Path indexPath) throws IOException {
+        try (FSDirectory directory = FSDirectory.open(indexPath)) {
+            return SegmentInfos.readLatestCommit(directory).getUserData().get(ContentStore.COMMIT_DATA_KEY);
+        }
+    }
+
+    private static List<String> filenames(List<Searcher.SearchResult> results) {
+        return results.stream().map(Searcher.SearchResult::getFilename).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void testIndicizzazioneParallelaEquivalenteASequenziale() throws Exception {
+        Path sequentialIndex = Paths.get("target", "test-index-sequential");
+        Path parallelIndex = Paths.get("target", "test-index-parallel");
+        deleteRecursively(sequentialIndex);
+        deleteRecursively(parallelIndex);
+
+        Indexer sequential = new Indexer(sequentialIndex.toString());
+        int numSequential = sequential.createIndex(DATA_PATH.toString());
+        sequential.close();
+
+        Indexer parallel = new Indexer(parallelIndex.toString(), 4);
+        int numParallel = parallel.createIndex(DATA_PATH.toString());
+        parallel.close();
+
+        assertEquals(numSequential, numParallel, "L'indicizzazione parallela deve indicizzare gli stessi file");
+        assertEquals(numParallel, parallel.getMetrics().getTotalFiles(), "Le metriche devono contare ogni file una sola volta");
+        assertEquals(0, parallel.getMetrics().getFailedFiles());
+
+        try (Searcher s1 = new Searcher(sequentialIndex.toString());
+             Searcher s2 = new Searcher(parallelIndex.toString())) {
+            assertEquals(filenames(s1.search("lucene", 10)), filenames(s2.search("lucene", 10)),
+                    "I due indici devono restituire gli stessi documenti");
+        }
+    }
+
+    @Test
+    void testAggiornamentoIncrementale() throws Exception {
+        Path dataCopy = Paths.get("target", "test-data-incremental");
+        Path indexPath = Paths.get("target", "test-index-incremental");
+        deleteRecursively(dataCopy);
+        deleteRecursively(indexPath);
+        Files.createDirectories(dataCopy);
+        try (Stream<Path> files = Files.list(DATA_PATH)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.copy(file, dataCopy.resolve(file.getFileName()));
+            }
+        }
+
+        Indexer indexer = new Indexer(indexPath.toString());
+        int numIndexed = indexer.updateIndex(dataCopy.toString());
+        assertTrue(numIndexed > 0, "Il primo aggiornamento deve indicizzare tutti i file");
+        indexer.close();
+
+        // Nessuna modifica: tutti i file devono essere saltati
+        indexer = new Indexer(indexPath.toString());
+        assertEquals(0, indexer.updateIndex(dataCopy.toString()), "I file invariati non devono essere reindicizzati");
+        assertEquals(numIndexed, indexer.getMetrics().getSkippedFiles());
+        indexer.close();
+
+        // Un file modificato, uno aggiunto e uno rimosso
+        Files.writeString(dataCopy.resolve("documento1.txt"), "zanzibar modificato");
+        Files.writeString(dataCopy.resolve("nuovo.txt"), "contenuto quasar aggiunto");
+        Files.delete(dataCopy.resolve("documento2.txt"));
+
+        indexer = new Indexer(indexPath.toString(), 2);
+        assertEquals(2, indexer.updateIndex(dataCopy.toString()), "Devono essere indicizzati solo i file modificati o nuovi");
+        assertEquals(1, indexer.getMetrics().getDeletedFiles());
+        // I worker terminati hanno già riunito le proprie statistiche
+        assertEquals(0, indexer.getMetrics().getActiveThreadStatsCount());
+        indexer.close();
+
+        try (Searcher searcher = new Searcher(indexPath.toString())) {
+            assertEquals(1, searcher.search("zanzibar", 10).size());
+            assertEquals(1, searcher.search("quasar", 10).size());
+            assertTrue(searcher.search("nome:documento2", 10).isEmpty(), "Il file rimosso non deve essere più nell'indice");
+        }
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            assertEquals(numIndexed, reader.numDocs(), "Ogni file deve comparire una sola volta nell'indice");
+        }
+
+        // Cambia solo la data di modifica: il file non viene reindicizzato, ma la data nell'indice
+        // viene aggiornata e l'aggiornamento successivo non deve più rileggerlo
+        Path touched = dataCopy.resolve("indici_invertiti.txt");
+        FileTime mtime = FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() + 60_000);
+        Files.setLastModifiedTime(touched, mtime);
+        indexer = new Indexer(indexPath.toString());
+        assertEquals(0, indexer.updateIndex(dataCopy.toString()));
+        indexer.close();
+        assertEquals(mtime.toMillis(), indexedMtime(indexPath, "indici_invertiti.txt"));
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            assertEquals(numIndexed, reader.numDocs());
+        }
+    }
+
+    @Test
+    void testHashCalcolatoDuranteLaLettura() throws Exception {
+        for (ContentStorage storage : ContentStorage.values()) {
+            Path dataPath = Paths.get("target", "test-data-hash-" + storage);
+            Path indexPath = Paths.get("target", "test-index-hash-" + storage);
+            deleteRecursively(dataPath);
+            deleteRecursively(indexPath);
+            Files.createDirectories(dataPath);
+            Path file = dataPath.resolve("alfabeto.txt");
+            Files.writeString(file, "alfa beta");
+
+            Indexer indexer = new Indexer(indexPath.toString(), 1, storage);
+            assertEquals(1, indexer.createIndex(dataPath.toString()));
+            indexer.close();
+            assertEquals(sha256(file), indexedHash(indexPath, "alfabeto.txt"), storage.name());
+
+            // Cambia solo la data di modifica: l'hash coincide e il file viene saltato
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+            indexer = new Indexer(indexPath.toString(), 1, storage);
+            assertEquals(0, indexer.updateIndex(dataPath.toString()), storage.name());
+            indexer.close();
+
+            // Stessa dimensione ma contenuto diverso, poi dimensione diversa
+            for (String content : new String[] {"alfa zeta", "alfa zeta omega"}) {
+                Files.writeString(file, content);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 120_000));
+                indexer = new Indexer(indexPath.toString(), 1, storage);
+                assertEquals(1, indexer.updateIndex(dataPath.toString()), storage.name() + ": " + content);
+                indexer.close();
+                assertEquals(sha256(file), indexedHash(indexPath, "alfabeto.txt"), storage.name() + ": " + content);
+            }
+            try (Searcher searcher = new Searcher(indexPath.toString())) {
+                assertEquals(1, searcher.search("omega", 10).size(), storage.name());
+            }
+        }
+    }
+
+    private static String sha256(Path file) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String indexedHash(Path indexPath, String path) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            TopDocs topDocs = searcher.search(new TermQuery(new Term(Indexer.PATH_FIELD, path)), 1);
+            assertEquals(1, topDocs.scoreDocs.length);
+            return searcher.storedFields().document(topDocs.scoreDocs[0].doc).get(Indexer.HASH_FIELD);
+        }
+    }
+
+    private static long indexedMtime(Path indexPath, String path) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            TopDocs topDocs = new IndexSearcher(reader).search(new TermQuery(new Term(Indexer.PATH_FIELD, path)), 1);
+            assertEquals(1, topDocs.scoreDocs.length);
+            int doc = topDocs.scoreDocs[0].doc;
+            LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+            NumericDocValues mtimes = leaf.reader().getNumericDocValues(Indexer.MTIME_FIELD);
+            assertTrue(mtimes.advanceExact(doc - leaf.docBase));
+            return mtimes.longValue();
+        }
+    }
+
+    @Test
+    void testContenutoNonMemorizzatoLettoInStreaming() throws Exception {
+        Path dataPath = Paths.get("target", "test-data-streaming");
+        Path indexPath = Paths.get("target", "test-index-streaming");
+        deleteRecursively(dataPath);
+        deleteRecursively(indexPath);
+        Files.createDirectories(dataPath);
+        Files.write(dataPath.resolve("accenti.txt"), "perché così è più veloce".getBytes(StandardCharsets.UTF_8));
+
+        Indexer indexer = new Indexer(indexPath.toString(), 1, ContentStorage.NONE);
+        assertEquals(1, indexer.createIndex(dataPath.toString()));
+        indexer.close();
+
+        try (Searcher searcher = new Searcher(indexPath.toString())) {
+            List<Searcher.SearchResult> results = searcher.search("perché", 10);
+            assertEquals(1, results.size(), "Il contenuto deve essere decodificato come UTF-8");
+            assertEquals("", results.get(0).getSnippet(), "Senza contenuto memorizzato non c'è snippet");
+        }
+    }
+
+    @Test
+    void testContenutoNellArchivioEsterno() throws Exception {
+        Path storedIndex = Paths.get("target", "test-index-stored");
+        Path externalIndex = Paths.get("target", "test-index-external");
+        deleteRecursively(storedIndex);
+        deleteRecursively(externalIndex);
+
+        Indexer stored = new Indexer(storedIndex.toString(), 1, ContentStorage.STORED);
+        stored.createIndex(DATA_PATH.toString());
+        stored.close();
+        Indexer external = new Indexer(externalIndex.toString(), 2, ContentStorage.EXTERNAL);
+        external.createIndex(DATA_PATH.toString());
+        external.close();
+        String storeFile = committedContentStore(externalIndex);
+        assertNotNull(storeFile, "Il commit deve indicare il file dell'archivio");
+        assertTrue(Files.exists(externalIndex.resolve(storeFile)));
+
+        try (Searcher s1 = new Searcher(storedIndex.toString());
+             Searcher s2 = new Searcher(externalIndex.toString())) {
+            for (String query : new String[] {"lucene", "indici", "nome:documento1", "ricerca informazioni"}) {
+                List<String> expected = s1.search(query, 10).stream()
+                        .map(r -> r.getFilename() + "|" + r.getSnippet() + "|" + r.getHighlights().size())
+                        .sorted().collect(Collectors.toList());
+                List<String> actual = s2.search(query, 10).stream()
+                        .map(r -> r.getFilename() + "|" + r.getSnippet() + "|" + r.getHighlights().size())
+                        .sorted().collect(Collectors.toList());
+                assertEquals(expected, actual, "Gli snippet dall'archivio esterno devono coincidere: " + query);
+            }
+        }
+    }
+
+    @Test
+    void testRicostruzioneNonInvalidaIReaderAperti() throws Exception {
+        Path data = Paths.get("target", "test-data-rebuild");
+        Path index = Paths.get("target", "test-index-rebuild");
+        deleteRecursively(data);
+        deleteRecursively(index);
+        Files.createDirectories(data);
+        Files.write(data.resolve("a.txt"), "lucene archivio esterno prima versione".getBytes(StandardCharsets.UTF_8));
+
+        Indexer indexer = new Indexer(index.toString(), 1, ContentStorage.EXTERNAL);
+        indexer.createIndex(data.toString());
+        String firstStore = committedContentStore(index);
+        try (Searcher searcher = new Searcher(index.toString())) {
+            searcher.setResultCacheEnabled(false);
+            String before = searcher.search("lucene", 10).get(0).getSnippet();
+            assertFalse(before.isEmpty());
+
+            // La ricostruzione scrive un nuovo file: il reader aperto legge ancora il suo
+            Files.write(data.resolve("a.txt"), "lucene seconda versione completamente diversa".getBytes(StandardCharsets.UTF_8));
+            indexer.createIndex(data.toString());
+            String secondStore = committedContentStore(index);
+            assertNotEquals(firstStore, secondStore);
+            assertTrue(Files.exists(index.resolve(firstStore)), "Il file del commit precedente serve ancora");
+            assertEquals(before, searcher.search("lucene", 10).get(0).getSnippet());
+
+            // Dopo il commit successivo il file più vecchio non è più necessario
+            indexer.createIndex(data.toString());
+            assertFalse(Files.exists(index.resolve(firstStore)));
+            searcher.refresh();
+            assertTrue(searcher.search("seconda", 10).get(0).getSnippet().contains("seconda"));
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test
+    void testNumeroThreadNonValido() {
+        assertThrows(IllegalArgumentException.class, () -> new Indexer("target/test-index-invalid", 0));
+    }
+
+    @Test
+    void testAnnullamentoConservaIFileIndicizzati() throws Exception {
+        Path dataPath = Paths.get("target", "test-data-cancel");
+        Path indexPath = Paths.get("target", "test-index-cancel");
+        deleteRecursively(dataPath);
+        deleteRecursively(indexPath);
+        CorpusGenerator generator = new CorpusGenerator(7);
+        generator.setNumFiles(1000);
+        generator.setFileSize(4096, 0);
+        generator.generate(dataPath);
+
+        Indexer indexer = new Indexer(indexPath.toString(), 2);
+        int[] indexed = new int[1];
+        Thread indexing = new Thread(() -> {
+            try {
+                indexed[0] = indexer.updateIndex(dataPath.toString());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        indexing.start();
+        while (indexer.getMetrics().getTotalFiles() < 10 && indexing.isAlive()) {
+            Thread.sleep(1);
+        }
+        indexer.cancel();
+        indexing.join();
+
+        assertTrue(indexer.isCancelled());
+        assertTrue(indexed[0] >= 10 && indexed[0] < 1000, "File indicizzati: " + indexed[0]);
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            assertEquals(indexed[0], reader.numDocs());
+        }
+
+        // L'aggiornamento successivo riprende senza reindicizzare i file già salvati
+        assertEquals(1000 - indexed[0], indexer.updateIndex(dataPath.toString()));
+        assertFalse(indexer.isCancelled());
+        indexer.close();
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))) {
+            assertEquals(1000, reader.numDocs());
+        }
+    }
+
+    @Test
+    void testAnnullamentoPrimaDellAvvio() throws Exception {
+        Path indexPath = Paths.get("target", "test-index-cancel-early");
+        deleteRecursively(indexPath);
+        Indexer indexer = new Indexer(indexPath.toString());
+        try {
+            // Richiesta arrivata prima che l'indicizzazione programmata parta: non va persa
+            indexer.cancel();
+            assertEquals(0, indexer.createIndex(DATA_PATH.toString()));
+            assertTrue(indexer.isCancelled());
+
+            // La richiesta è stata consumata dall'indicizzazione annullata
+            assertTrue(indexer.updateIndex(DATA_PATH.toString()) > 0);
+            assertFalse(indexer.isCancelled());
+
+            // Una richiesta ritirata alla programmazione della successiva non la annulla
+            indexer.cancel();
+            indexer.resetCancel();
+            indexer.updateIndex(DATA_PATH.toString());
+            assertFalse(indexer.isCancelled());
+        } finally {
+            indexer.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexingMetricsTest {
+
+    @Test
+    void testRegistrazioneConcorrente() throws Exception {
+        IndexingMetrics metrics = new IndexingMetrics();
+        metrics.startIndexing();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    boolean successful = i % 100 != 0;
+                    metrics.recordFileMetric("file-" + thread + "-" + i, (i % 10) * 1_000_000L, successful, successful ? "" : "errore");
+                    metrics.recordSkippedFile();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        metrics.endIndexing();
+
+        assertEquals(80_000, metrics.getTotalFiles());
+        assertEquals(79_200, metrics.getSuccessfulFiles());
+        assertEquals(800, metrics.getFailedFiles());
+        assertEquals(80_000, metrics.getSkippedFiles());
+        // Vengono conservati solo i primi 100 messaggi di errore
+        assertEquals(100, metrics.getErrors().size());
+        assertEquals(9, metrics.getMaxFileProcessingTime());
+
+        Map<String, Object> report = metrics.generateJsonReport();
+        assertEquals(79_200L, ((Map<?, ?>) report.get("fileProcessingTime")).get("count"));
+    }
+
+    @Test
+    void testIstogrammiInNanosecondi() {
+        IndexingMetrics metrics = new IndexingMetrics();
+        // File piccoli: con la risoluzione in millisecondi risulterebbero tutti 0 ms
+        for (int i = 1; i <= 1000; i++) {
+            metrics.recordFileMetric("file-" + i, i * 1000L, true, "");
+            metrics.recordPhase(IndexingMetrics.Phase.READ, i * 100L);
+        }
+        metrics.recordPhase(IndexingMetrics.Phase.WRITE, 5_000_000);
+
+        LatencyHistogram files = metrics.getFileProcessingHistogram();
+        assertEquals(1000, files.getCount());
+        assertEquals(500_000, files.getValueAtPercentile(50), 500_000 * 0.035);
+        assertEquals(990_000, files.getValueAtPercentile(99), 990_000 * 0.035);
+        assertEquals(0.5005, metrics.getAverageFileProcessingTime(), 1e-9);
+        assertEquals(1000, metrics.getPhaseHistogram(IndexingMetrics.Phase.READ).getCount());
+        assertEquals(0, metrics.getPhaseHistogram(IndexingMetrics.Phase.ANALYZE).getCount());
+
+        Map<String, Object> report = metrics.generateJsonReport();
+        Map<?, ?> phases = (Map<?, ?>) report.get("phases");
+        assertEquals(5.0, ((Map<?, ?>) phases.get("write")).get("maxMs"));
+        // I file più lenti si discostano di meno di 2 deviazioni standard: nessuna anomalia
+        assertTrue(((List<?>) report.get("anomalies")).isEmpty());
+    }
+
+    @Test
+    void testStatisticheAMemoriaCostante(@TempDir Path tempDir) throws Exception {
+        IndexingMetrics metrics = new IndexingMetrics();
+        Path detail = tempDir.resolve("dettaglio.csv");
+        metrics.setDetailFile(detail);
+        metrics.startIndexing();
+
+        // Ogni thread registra una parte dei valori 1..100000 µs, più alcuni errori
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = thread + 1; i <= 100_000; i += 4) {
+                    metrics.recordFileMetric("file-" + i, i * 1000L, true, "");
+                }
+                metrics.recordFileMetric("rotto-" + thread, 1, false, "errore \"grave\"\n\tat stack");
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        metrics.endIndexing();
+
+        // Deviazione standard della distribuzione uniforme discreta: sqrt((n^2 - 1) / 12)
+        assertEquals(Math.sqrt((100_000.0 * 100_000.0 - 1) / 12) / 1000, metrics.getFileProcessingStdDev(), 1e-6);
+
+        List<IndexingMetrics.FileMetric> slowest = metrics.getSlowestFiles();
+        assertEquals(20, slowest.size());
+        for (int i = 0; i < slowest.size(); i++) {
+            assertEquals("file-" + (100_000 - i), slowest.get(i).getFileName());
+        }
+
+        List<String> lines = Files.readAllLines(detail, StandardCharsets.UTF_8);
+        assertEquals(1 + 100_004, lines.size());
+        assertEquals("fileName,successful,processingNanos,errorMessage", lines.get(0));
+        assertTrue(lines.contains("\"rotto-0\",false,1,\"errore \"\"grave\"\"\""));
+    }
+
+    @Test
+    void testStatisticheDeiThreadTerminati(@TempDir Path tempDir) throws Exception {
+        IndexingMetrics metrics = new IndexingMetrics();
+        Path detail = tempDir.resolve("dettaglio.csv");
+        metrics.setDetailFile(detail);
+
+        // Più esecuzioni, ognuna con worker nuovi che registrano una parte dei valori 1..10000 µs
+        for (int run = 0; run < 5; run++) {
+            metrics.startIndexing();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = run * 4 + t;
+                threads.add(new Thread(() -> {
+                    for (int i = offset + 1; i <= 10_000; i += 20) {
+                        metrics.recordFileMetric("file-" + i, i * 1000L, true, "");
+                    }
+                    metrics.releaseThread();
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            metrics.endIndexing();
+            assertEquals(0, metrics.getActiveThreadStatsCount());
+        }
+
+        assertEquals(Math.sqrt((10_000.0 * 10_000.0 - 1) / 12) / 1000, metrics.getFileProcessingStdDev(), 1e-6);
+        List<IndexingMetrics.FileMetric> slowest = metrics.getSlowestFiles();
+        assertEquals(20, slowest.size());
+        for (int i = 0; i < slowest.size(); i++) {
+            assertEquals("file-" + (10_000 - i), slowest.get(i).getFileName());
+        }
+        assertEquals(1 + 10_000, Files.readAllLines(detail, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    void testReportCompressoDuranteIndicizzazione(@TempDir Path tempDir) throws Exception {
+        IndexingMetrics metrics = new IndexingMetrics();
+        metrics.startIndexing();
+        metrics.recordFileMetric("a.txt", 2_000_000, true, "");
+        metrics.recordFileMetric("b.txt", 1_000, false, "riga \"uno\"\nriga\\due");
+
+        // Il report viene scritto prima di endIndexing
+        Path json = tempDir.resolve("report.json.gz");
+        Path csv = tempDir.resolve("report.csv.gz");
+        metrics.saveJsonReport(json.toString());
+        metrics.saveCsvReport(csv.toString());
+
+        String jsonText = readGzip(json);
+        assertTrue(jsonText.startsWith("{\n"));
+        assertTrue(jsonText.contains("riga \\\"uno\\\"\\nriga\\\\due"), jsonText);
+        assertTrue(jsonText.contains("\"fileName\": \"a.txt\""), jsonText);
+        assertTrue(jsonText.contains("\"anomalies\": []"), jsonText);
+
+        String[] csvLines = readGzip(csv).split("\\R");
+        assertEquals("metric,count,meanMs,p50Ms,p90Ms,p99Ms,maxMs", csvLines[0]);
+        assertTrue(csvLines[1].startsWith("file,1,2.000,"), csvLines[1]);
+    }
+
+    private static String readGzip(Path file) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
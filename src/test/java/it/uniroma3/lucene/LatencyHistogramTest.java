@@ -0,0 +1,37 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testPercentiliEntroLaPrecisione() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Latenze da 1 µs a 10 ms
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMaxNanos());
+        assertEquals(5_000_000, histogram.getValueAtPercentile(50), 5_000_000 * 0.035);
+        assertEquals(9_900_000, histogram.getValueAtPercentile(99), 9_900_000 * 0.035);
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getValueAtPercentile(0), 1000 * 0.035);
+    }
+
+    @Test
+    void testIntervalliContigui() {
+        // Ogni valore cade nell'intervallo il cui limite superiore non è inferiore al valore
+        long previousHighest = -1;
+        for (int index = 0; index < 1000; index++) {
+            long highest = LatencyHistogram.highestValueInBucket(index);
+            assertEquals(index, LatencyHistogram.bucketIndex(previousHighest + 1));
+            assertEquals(index, LatencyHistogram.bucketIndex(highest));
+            previousHighest = highest;
+        }
+        assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) >= 0);
+    }
+}
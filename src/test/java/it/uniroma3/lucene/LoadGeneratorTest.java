@@ -0,0 +1,56 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTest {
+    private static Path testIndexPath;
+
+    @BeforeAll
+    static void setupIndex() throws IOException {
+        testIndexPath = Paths.get("target", "test-index-load");
+        if (Files.exists(testIndexPath)) {
+            Files.walk(testIndexPath)
+                    .sorted((a, b) -> b.compareTo(a))
+                    .forEach(p -> {
+                        try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                    });
+        }
+
+        Indexer indexer = new Indexer(testIndexPath.toString());
+        indexer.createIndex("data");
+        indexer.close();
+    }
+
+    @Test
+    void testReplayDelLogAFrequenzaCostante() throws Exception {
+        Path logFile = Paths.get("target", "test-query-log.txt");
+        Files.write(logFile, List.of(
+                "2025-11-02 16:49:13 | NO_RESULTS | nome:documento1",
+                "2025-11-02 16:49:25 | ERROR | contenuto:\"analisi | Cannot parse",
+                "Java Lucene"), StandardCharsets.UTF_8);
+
+        List<String> queries = LoadGenerator.readQueryLog(logFile);
+        assertEquals(List.of("nome:documento1", "contenuto:\"analisi", "Java Lucene"), queries);
+
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            LoadGenerator generator = new LoadGenerator(searcher, queries, 10);
+            LoadGenerator.Report report = generator.runAtRate(200, 4, 500);
+
+            // 100 richieste previste: una su tre non è una query valida
+            assertEquals(100, report.getCompleted() + report.getMissed());
+            assertTrue(report.getErrors() > 0);
+            assertEquals(report.getCompleted(), report.getLatency().getCount());
+            // La latenza corretta comprende il tempo di servizio
+            assertTrue(report.getLatency().getValueAtPercentile(99) >= report.getServiceTime().getValueAtPercentile(50));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LruCacheTest {
+
+    @Test
+    void testRimozioneElementoMenoRecente() {
+        LruCache<String, Integer> cache = new LruCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.get("a"));
+
+        // "b" è l'elemento usato meno di recente e deve essere rimosso
+        cache.put("c", 3);
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+
+        LruCache.Stats stats = cache.stats();
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+    }
+
+    @Test
+    void testCacheDisattivata() {
+        LruCache<String, Integer> cache = new LruCache<>(0);
+        cache.put("a", 1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.stats().getSize());
+    }
+}
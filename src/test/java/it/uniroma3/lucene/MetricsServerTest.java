@@ -0,0 +1,65 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsServerTest {
+
+    @Test
+    void testMetricheInFormatoPrometheus() throws Exception {
+        Path indexPath = Paths.get("target", "test-index-metrics-server");
+        if (Files.exists(indexPath)) {
+            Files.walk(indexPath)
+                    .sorted((a, b) -> b.compareTo(a))
+                    .forEach(p -> {
+                        try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                    });
+        }
+        Indexer indexer = new Indexer(indexPath.toString());
+        indexer.createIndex("data");
+        indexer.close();
+
+        try (MetricsServer server = new MetricsServer(0);
+             Searcher searcher = new Searcher(indexPath.toString())) {
+            server.setIndexingMetrics(indexer.getMetrics());
+            server.setSearcher(searcher);
+            searcher.search("lucene", 10);
+            searcher.search("lucene", 10);
+            assertThrows(Exception.class, () -> searcher.search("contenuto:\"analisi", 10));
+
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL("http://localhost:" + server.getPort() + MetricsServer.PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            String body;
+            try (InputStream in = connection.getInputStream()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            assertTrue(body.contains("# TYPE lucene_search_latency_seconds summary\n"), body);
+            assertTrue(body.contains("\nlucene_search_queries_total 3\n"), body);
+            assertTrue(body.contains("\nlucene_search_errors_total 1\n"), body);
+            assertTrue(body.contains("\nlucene_search_latency_seconds_count 3\n"), body);
+            assertTrue(body.contains("\nlucene_cache_hits_total{cache=\"results\"} 1\n"), body);
+            assertTrue(body.contains("\nlucene_reader_generation 0\n"), body);
+            assertTrue(body.contains("\nlucene_indexing_in_progress 0\n"), body);
+            assertTrue(body.contains("\nlucene_indexing_files_total{outcome=\"indexed\"} "
+                    + indexer.getMetrics().getSuccessfulFiles() + "\n"), body);
+            assertTrue(body.contains("lucene_indexing_phase_seconds{phase=\"read\",quantile=\"0.99\"} "), body);
+            // Ogni riga è un commento o un campione con un valore numerico
+            for (String line : body.split("\n")) {
+                assertTrue(line.startsWith("# ") || line.matches("[a-z_]+(\\{[^}]*\\})? -?[0-9.e+-]+"), line);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryLogTest {
+    private static Path logPath;
+
+    @BeforeAll
+    static void setupDirectory() throws IOException {
+        logPath = Paths.get("target", "test-query-log");
+        Files.createDirectories(logPath);
+        try (var files = Files.list(logPath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testScritturaConcorrenteSenzaPerdite() throws Exception {
+        Path file = logPath.resolve("concorrente.txt");
+        // Coda piccola con attesa: i produttori vengono rallentati, ma nessuna voce va persa
+        try (QueryLog log = new QueryLog(file, 16, QueryLog.OverflowPolicy.BLOCK, 0, 0)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        log.log("query " + thread + "\n" + i, QueryLog.Outcome.OK, i, 1_500_000, null);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            log.log("contenuto:\"analisi", QueryLog.Outcome.ERROR, 0, 0, "Cannot parse");
+            log.flush();
+            assertEquals(0, log.getDroppedCount());
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2001, lines.size());
+        assertTrue(lines.get(0).matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2} \\| OK \\| query \\d \\d+ \\| \\d+ risultati \\| 1\\.500 ms"),
+                lines.get(0));
+        assertTrue(lines.get(2000).endsWith(" | ERROR | contenuto:\"analisi | Cannot parse | 0.000 ms"));
+        // Il formato resta leggibile dal generatore di carico
+        assertEquals("contenuto:\"analisi", LoadGenerator.readQueryLog(file).get(2000));
+    }
+
+    @Test
+    void testRotazioneDelFile() throws Exception {
+        Path file = logPath.resolve("rotazione.txt");
+        try (QueryLog log = new QueryLog(file, 1024, QueryLog.OverflowPolicy.BLOCK, 4096, 2)) {
+            for (int i = 0; i < 1000; i++) {
+                log.log("query " + i, QueryLog.Outcome.NO_RESULTS, 0, 1000, null);
+                if (i % 100 == 0) {
+                    log.flush();
+                }
+            }
+        }
+
+        assertTrue(Files.exists(logPath.resolve("rotazione.txt.1")));
+        assertTrue(Files.exists(logPath.resolve("rotazione.txt.2")));
+        assertFalse(Files.exists(logPath.resolve("rotazione.txt.3")));
+        assertTrue(Files.size(logPath.resolve("rotazione.txt.1")) >= 4096);
+        // Le ultime voci si trovano nel file corrente
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(lines.get(lines.size() - 1).contains("| query 999 |"));
+    }
+}
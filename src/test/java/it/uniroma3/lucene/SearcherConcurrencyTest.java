@@ -0,0 +1,143 @@
+package it.uniroma3.lucene;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearcherConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int QUERIES_PER_THREAD = 200;
+    private static final String[] QUERIES = {
+        "lucene",
+        "java",
+        "Java programmazione",
+        "\"information retrieval\"",
+        "nome:documento1",
+        "contenuto:indici",
+        "nome:ricerca contenuto:sistema",
+        "analyzer",
+        "Java Lucene",
+        "contenuto:struttur*"
+    };
+
+    private static Path testIndexPath;
+
+    @BeforeAll
+    static void setupIndex() throws IOException {
+        testIndexPath = Paths.get("target", "test-index-concurrency");
+        Path dataPath = Paths.get("target", "test-data-concurrency");
+        deleteRecursively(testIndexPath);
+        deleteRecursively(dataPath);
+        Files.createDirectories(dataPath);
+
+        // Un commit per file: l'indice ha un segmento per documento e può essere diviso in più slice
+        Indexer indexer = new Indexer(testIndexPath.toString());
+        try (Stream<Path> files = Files.list(Paths.get("data"))) {
+            for (Path file : files.sorted().collect(Collectors.toList())) {
+                Files.copy(file, dataPath.resolve(file.getFileName()));
+                indexer.updateIndex(dataPath.toString());
+            }
+        }
+        indexer.close();
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.exists(path)) {
+            Files.walk(path)
+                    .sorted((a, b) -> b.compareTo(a))
+                    .forEach(p -> {
+                        try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                    });
+        }
+    }
+
+    /**
+     * Rappresentazione confrontabile di una lista di risultati.
+     */
+    private static List<String> describe(List<Searcher.SearchResult> results) {
+        return results.stream()
+                .map(r -> r.getFilename() + "|" + r.getScore() + "|" + r.getSnippet())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testRicercheConcorrentiEquivalentiASequenziali() throws Exception {
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            // Senza cache ogni ricerca concorrente ripete parsing, valutazione e snippet
+            searcher.setResultCacheEnabled(false);
+            searcher.setQueryCacheEnabled(false);
+            // Risultati di riferimento calcolati da un solo thread
+            Map<String, List<String>> expected = new HashMap<>();
+            for (String query : QUERIES) {
+                expected.put(query, describe(searcher.search(query, 10)));
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            try {
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    Callable<Integer> task = () -> {
+                        start.await();
+                        int mismatches = 0;
+                        for (int i = 0; i < QUERIES_PER_THREAD; i++) {
+                            String query = QUERIES[ThreadLocalRandom.current().nextInt(QUERIES.length)];
+                            if (!expected.get(query).equals(describe(searcher.search(query, 10)))) {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    };
+                    futures.add(pool.submit(task));
+                }
+                start.countDown();
+
+                for (Future<Integer> future : futures) {
+                    assertEquals(0, future.get(), "Le ricerche concorrenti devono dare gli stessi risultati di quelle sequenziali");
+                }
+                assertEquals(0, searcher.getResultCacheStats().getHits());
+                assertEquals(0, searcher.getQueryCacheStats().getHits());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void testRicercaParallelaSuiSegmentiEquivalenteASequenziale() throws Exception {
+        try (Searcher sequential = new Searcher(testIndexPath.toString());
+             Searcher parallel = new Searcher(testIndexPath.toString(), 4, 1)) {
+            // Altrimenti la ricerca senza parallelismo sarebbe servita dalla cache
+            parallel.setResultCacheEnabled(false);
+            assertFalse(sequential.isParallelSearchEnabled());
+            assertTrue(parallel.isParallelSearchEnabled());
+            assertTrue(parallel.getSliceCount() > 1, "La query deve essere suddivisa in più slice");
+
+            for (String query : QUERIES) {
+                List<String> expected = describe(sequential.search(query, 10));
+                assertEquals(expected, describe(parallel.search(query, 10)), "Risultati diversi per la query: " + query);
+
+                parallel.setParallelSearchEnabled(false);
+                assertEquals(expected, describe(parallel.search(query, 10)), "Risultati diversi senza parallelismo: " + query);
+                parallel.setParallelSearchEnabled(true);
+            }
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package it.uniroma3.lucene;
 
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -82,4 +88,216 @@ public class SearcherTest {
             assertTrue(results.size() > 0, "La ricerca con wildcard dovrebbe produrre risultati");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRefreshESostituzioneIndiceSenzaRicreareSearcher() throws Exception {
+        Path dataPath = Paths.get("target", "test-data-refresh");
+        Path otherIndexPath = Paths.get("target", "test-index-refresh");
+        for (Path path : new Path[] {dataPath, otherIndexPath}) {
+            if (Files.exists(path)) {
+                Files.walk(path)
+                        .sorted((a, b) -> b.compareTo(a))
+                        .forEach(p -> {
+                            try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                        });
+            }
+        }
+        Files.createDirectories(dataPath);
+        Files.writeString(dataPath.resolve("primo.txt"), "capibara");
+
+        Indexer indexer = new Indexer(otherIndexPath.toString());
+        indexer.createIndex(dataPath.toString());
+
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            assertTrue(searcher.search("capibara", 10).isEmpty());
+
+            searcher.switchIndex(otherIndexPath.toString());
+            assertEquals(1, searcher.search("capibara", 10).size(), "Dopo switchIndex deve essere interrogato il nuovo indice");
+
+            Files.writeString(dataPath.resolve("secondo.txt"), "capibara ancora");
+            indexer.updateIndex(dataPath.toString());
+            searcher.refresh();
+            assertEquals(2, searcher.search("capibara", 10).size(), "Dopo refresh devono essere visibili i nuovi documenti");
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test
+    void testCacheDeiRisultati() throws Exception {
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            List<Searcher.SearchResult> first = searcher.search("Java Lucene", 10);
+            assertEquals(0, searcher.getResultCacheStats().getHits());
+
+            // Stessa query a meno degli spazi: deve essere servita dalla cache
+            List<Searcher.SearchResult> second = searcher.search("  Java   Lucene ", 10);
+            assertEquals(1, searcher.getResultCacheStats().getHits(), "La query normalizzata deve essere servita dalla cache");
+            assertEquals(first.size(), second.size());
+            for (int i = 0; i < first.size(); i++) {
+                assertEquals(first.get(i).getFilename(), second.get(i).getFilename());
+                assertEquals(first.get(i).getScore(), second.get(i).getScore());
+            }
+
+            // Un numero massimo di risultati diverso è una voce distinta
+            searcher.search("Java Lucene", 1);
+            assertEquals(1, searcher.getResultCacheStats().getHits());
+            assertEquals(2, searcher.getResultCacheStats().getSize());
+        }
+    }
+
+    @Test
+    void testCacheDelleQueryAnalizzate() throws Exception {
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            Query first = searcher.parseQuery("nome:documento contenuto:java");
+            Query second = searcher.parseQuery(" nome:documento  contenuto:java");
+            assertSame(first, second, "La query già analizzata deve essere restituita dalla cache");
+            assertEquals(1, searcher.getQueryCacheStats().getHits());
+
+            // Le query non valide non vengono messe in cache
+            assertThrows(ParseException.class, () -> searcher.parseQuery("   "));
+            assertEquals(1, searcher.getQueryCacheStats().getSize());
+        }
+    }
+
+    @Test
+    void testSnippetEvidenziatiDagliOffset() throws Exception {
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            List<Searcher.SearchResult> results = searcher.search("lucene", 10);
+            assertFalse(results.isEmpty());
+            for (Searcher.SearchResult result : results) {
+                assertFalse(result.getHighlights().isEmpty(), "Lo snippet deve evidenziare i termini della query: " + result.getFilename());
+                for (Searcher.Highlight highlight : result.getHighlights()) {
+                    String text = result.getSnippet().substring(highlight.getStart(), highlight.getEnd());
+                    assertEquals("lucene", text.toLowerCase());
+                }
+            }
+
+            // I termini espansi da un prefisso vengono evidenziati, quelli esclusi no
+            for (Searcher.SearchResult result : searcher.search("indic* -lucene", 10)) {
+                for (Searcher.Highlight highlight : result.getHighlights()) {
+                    String text = result.getSnippet().substring(highlight.getStart(), highlight.getEnd());
+                    assertTrue(text.toLowerCase().startsWith("indic"), "Evidenziazione inattesa: " + text);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testEspansioneLimitataAiTerminiDelDocumento(@TempDir Path tempDir) throws Exception {
+        // Più termini con lo stesso prefisso di quanti ne vengano espansi, tutti precedenti
+        // in ordine alfabetico all'unico termine presente nel secondo documento
+        Path data = Files.createDirectories(tempDir.resolve("data"));
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            many.append(String.format("parola%03d ", i));
+        }
+        Files.write(data.resolve("molti.txt"), many.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(data.resolve("uno.txt"), "testo con parolaz soltanto".getBytes(StandardCharsets.UTF_8));
+        Path index = tempDir.resolve("index");
+        Indexer indexer = new Indexer(index.toString());
+        indexer.createIndex(data.toString());
+        indexer.close();
+
+        try (Searcher searcher = new Searcher(index.toString())) {
+            for (Searcher.SearchResult result : searcher.search("parola*", 10)) {
+                if (result.getFilename().equals("uno.txt")) {
+                    assertEquals(1, result.getHighlights().size());
+                    Searcher.Highlight highlight = result.getHighlights().get(0);
+                    assertEquals("parolaz", result.getSnippet().substring(highlight.getStart(), highlight.getEnd()));
+                    return;
+                }
+            }
+            fail("Il documento uno.txt deve essere trovato");
+        }
+    }
+
+    @Test
+    void testValidazioneSenzaEsecuzione() throws Exception {
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            searcher.validateQuery("nome:documento1 lucene");
+            assertThrows(ParseException.class, () -> searcher.validateQuery("contenuto:\"analisi"));
+            assertThrows(ParseException.class, () -> searcher.validateQuery("   "));
+            // La validazione non esegue la query e non la registra
+            assertEquals(0, searcher.getSearchCount());
+            assertEquals(0, searcher.getResultCacheStats().getMisses());
+        }
+    }
+
+    @Test
+    void testPaginazioneConCursore() throws Exception {
+        try (Searcher searcher = new Searcher(testIndexPath.toString())) {
+            List<Searcher.SearchResult> all = searcher.search("lucene", 1000);
+            assertTrue(all.size() > 2, "Servono almeno tre risultati per verificare la paginazione");
+
+            // Le pagine concatenate coincidono con i risultati della ricerca completa
+            List<String> paged = new ArrayList<>();
+            String cursor = null;
+            do {
+                Searcher.Page page = searcher.searchPage("lucene", 2, cursor);
+                assertTrue(page.getResults().size() <= 2);
+                page.getResults().forEach(r -> paged.add(r.getFilename()));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            List<String> expected = new ArrayList<>();
+            all.forEach(r -> expected.add(r.getFilename()));
+            assertEquals(expected, paged);
+
+            assertThrows(IllegalArgumentException.class, () -> searcher.searchPage("lucene", 2, "non-un-cursore!"));
+
+            // La prima pagina è servita dalla cache dei risultati, condivisa con search
+            long hits = searcher.getResultCacheStats().getHits();
+            Searcher.Page cached = searcher.searchPage("lucene", 2, null);
+            assertEquals(hits + 1, searcher.getResultCacheStats().getHits());
+            assertEquals(expected.subList(0, 2), List.of(cached.getResults().get(0).getFilename(), cached.getResults().get(1).getFilename()));
+            assertNotNull(cached.getNextCursor());
+            searcher.search("lucene", 2);
+            assertEquals(hits + 2, searcher.getResultCacheStats().getHits());
+
+            // I risultati vengono notificati uno alla volta, e la ricerca può essere interrotta
+            List<Searcher.SearchResult> notified = new ArrayList<>();
+            Searcher.Page first = searcher.searchPage("indici", 2, null, () -> false, notified::add);
+            assertEquals(first.getResults(), notified);
+            assertThrows(CancellationException.class, () -> searcher.searchPage("informazioni", 2, null, () -> true, null));
+        }
+    }
+
+    @Test
+    void testBatchDiQueryNellOrdineDiIngresso(@TempDir Path tempDir) throws Exception {
+        Path logFile = tempDir.resolve("query_log.txt");
+        try (Searcher searcher = new Searcher(testIndexPath.toString());
+             QueryLog queryLog = new QueryLog(logFile)) {
+            searcher.setQueryLog(queryLog);
+            List<String> queries = List.of("lucene", "nome:documento1", "contenuto:\"analisi", "lucene", "java");
+            List<Searcher.BatchResult> batch = searcher.searchBatch(queries, 10, 3);
+
+            assertEquals(queries.size(), batch.size());
+            for (int i = 0; i < queries.size(); i++) {
+                Searcher.BatchResult result = batch.get(i);
+                assertEquals(queries.get(i), result.getQuery());
+                assertTrue(result.getElapsedNanos() > 0);
+                if (i == 2) {
+                    // La query non valida non interrompe le altre
+                    assertFalse(result.isSuccessful());
+                    assertTrue(result.getError() instanceof ParseException);
+                    continue;
+                }
+                assertTrue(result.isSuccessful(), () -> String.valueOf(result.getError()));
+                List<String> expected = new ArrayList<>();
+                searcher.search(queries.get(i), 10).forEach(r -> expected.add(r.getFilename()));
+                List<String> actual = new ArrayList<>();
+                result.getResults().forEach(r -> actual.add(r.getFilename()));
+                assertEquals(expected, actual);
+            }
+            assertEquals(1, searcher.getSearchErrorCount());
+            // Nemmeno le query del batch fallite vengono registrate nel log
+            queryLog.flush();
+            assertTrue(Files.readAllLines(logFile).stream().noneMatch(line -> line.contains("| ERROR |")));
+
+            // Il pool del Searcher viene riusato dai batch successivi
+            List<Searcher.BatchResult> again = searcher.searchBatch(queries, 10, 3);
+            for (int i = 0; i < queries.size(); i++) {
+                assertEquals(batch.get(i).getResults().size(), again.get(i).getResults().size());
+            }
+        }
+    }
+}